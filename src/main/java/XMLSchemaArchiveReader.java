@@ -0,0 +1,84 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Streams the xml entries of zip and tar(.gz) archives, so that archived examples can be checked without extracting them.
+ * <p>
+ * An archive is read in a single sequential pass, every xml entry is handed to the consumer as a stream positioned at the entry's content. The entries are named archive!/entry, with archive being
+ * the canonical path of the archive file.
+ */
+public final class XMLSchemaArchiveReader {
+
+    /**
+     * Receives the xml entries of an archive, see {@link #forEachXmlEntry(File, EntryConsumer)}.
+     */
+    public interface EntryConsumer {
+        void accept(String entryPath, InputStream entryStream) throws IOException, ConfigurationException;
+    }
+
+    private XMLSchemaArchiveReader() {
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file is a zip, tar or tar.gz archive (by its name)
+     */
+    public static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    /**
+     * Reads the archive sequentially and passes each xml entry to the consumer. The consumer must not close the stream, it is shielded anyway. The compressed bytes read are added to
+     * {@link XMLSchemaRunMetrics#bytesScanned}.
+     *
+     * @param archive the archive file
+     * @param consumer the consumer of the xml entries
+     * @throws IOException if the archive cannot be read
+     * @throws ConfigurationException if the consumer cannot parse an entry
+     */
+    public static void forEachXmlEntry(File archive, EntryConsumer consumer) throws IOException, ConfigurationException {
+        String archivePath = archive.getCanonicalPath();
+        String name = archive.getName().toLowerCase();
+
+        try (InputStream in = new BufferedInputStream(new ProxyInputStream(new FileInputStream(archive)) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    XMLSchemaRunMetrics.bytesScanned.addAndGet(n);
+                }
+            }
+        }, 1 << 16)) {
+            if (name.endsWith(".zip")) {
+                ZipInputStream zipIn = new ZipInputStream(in);
+                for (ZipEntry entry = zipIn.getNextEntry(); entry != null; entry = zipIn.getNextEntry()) {
+                    if (!entry.isDirectory() && isXml(entry.getName())) {
+                        consumer.accept(archivePath + "!/" + entry.getName(), CloseShieldInputStream.wrap(zipIn));
+                    }
+                }
+            } else {
+                TarArchiveInputStream tarIn = new TarArchiveInputStream(name.endsWith(".tar") ? in : new GZIPInputStream(in, 1 << 16));
+                for (TarArchiveEntry entry = tarIn.getNextEntry(); entry != null; entry = tarIn.getNextEntry()) {
+                    if (entry.isFile() && isXml(entry.getName())) {
+                        consumer.accept(archivePath + "!/" + entry.getName(), CloseShieldInputStream.wrap(tarIn));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isXml(String entryName) {
+        return entryName.toLowerCase().endsWith(".xml");
+    }
+}
@@ -2,11 +2,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.xml.namespace.QName;
 import org.apache.ws.commons.schema.XmlSchemaAny;
 import org.apache.ws.commons.schema.XmlSchemaAttribute;
 import org.apache.ws.commons.schema.XmlSchemaAttributeGroup;
@@ -15,6 +21,7 @@ import org.apache.ws.commons.schema.XmlSchemaAttributeGroupRef;
 import org.apache.ws.commons.schema.XmlSchemaAttributeOrGroupRef;
 import org.apache.ws.commons.schema.XmlSchemaChoice;
 import org.apache.ws.commons.schema.XmlSchemaChoiceMember;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
 import org.apache.ws.commons.schema.XmlSchemaComplexContentExtension;
 import org.apache.ws.commons.schema.XmlSchemaComplexType;
 import org.apache.ws.commons.schema.XmlSchemaContent;
@@ -37,15 +44,32 @@ public final class XMLSchemaBitmapBuilder {
     private static String groupRef = "groupRef";
     private static String delimiter = "/";
 
+    // Prefix of attribute segments in paths, e.g. /Origin/@lang
+    public static final String attributePrefix = "@";
+
+    // Segment of xs:any wildcards in paths, e.g. /Extensions/*
+    public static final String wildcardSegment = "*";
+
     private static int substitutionRounds = 3;
     private static Map<String, Set<String>> substitutionGroups = new HashMap<>();
 
     private static Set<String> ignoredNamespaces = new HashSet<>(Arrays.asList("http://www.w3.org/XML/1998/namespace"));
 
+    // Memo of the content of named (base) types: type QName -> paths relative to the type, each type is expanded once per load and then reused at every extension
+    private static Map<QName, List<String>> typeContentPaths = new HashMap<>();
+
+    // The base types currently being expanded (outermost first), to stop on recursive type definitions
+    private static List<QName> typesInExpansion = new ArrayList<>();
+
+    // The smallest index in typesInExpansion at which a recursion was stopped during the current expansion, the types expanded above it are incomplete
+    private static int cutExpansionIndex = Integer.MAX_VALUE;
+
     private XMLSchemaBitmapBuilder() {
     }
 
     public static Map<String, Map<String, Set<String>>> loadXsdString(String folderName, String fileName, Map<String, Map<String, Set<String>>> bitmap) throws IOException {
+        resetLoadState();
+
         // In a first round we build the bitmap
         loadXsdStringBase(folderName, fileName, bitmap);
 
@@ -57,6 +81,145 @@ public final class XMLSchemaBitmapBuilder {
         return resolveGroupRefs(bitmap, bitmapDeepCopy, folderName + fileName);
     }
 
+    /**
+     * Loads the bitmap like {@link #loadXsdString(String, String, Map)}, but reuses the per file results of the previous run kept in the given cache.
+     * <p>
+     * The include/import dependency graph is built first, only the changed files are parsed for it. Then the changed files and all files including or importing them (following the
+     * edges of the graph backwards) are extracted again, the extractions of all other files are taken from the cache. The group refs are resolved again for the extracted files and for
+     * all files referencing (directly or indirectly) a group or element of an extracted file, as a group may be used from a file not including it, all other files replay their cached
+     * rounds. Without any change the cached result of the main xsd is returned.
+     *
+     * @param folderName the folder of the main xsd
+     * @param fileName the main xsd
+     * @param bitmap the bitmap to load into
+     * @param buildCache the cache of the previous run, updated with the results of this run
+     * @return the bitmap
+     * @throws IOException
+     */
+    public static Map<String, Map<String, Set<String>>> loadXsdStringIncremental(String folderName, String fileName, Map<String, Map<String, Set<String>>> bitmap,
+        XMLSchemaBuildCache buildCache) throws IOException {
+        resetLoadState();
+
+        XSDSchemaGraph dependencyGraph = new XSDSchemaGraph();
+        XMLSchemaDependencyChecker.buildImportIncludeDependencyGraph(dependencyGraph, null, null, folderName, fileName, buildCache);
+
+        String rootFile = folderName + fileName;
+        if (buildCache.getRootPaths() != null) {
+            System.out.println("loadXsdStringIncremental: " + "none of the " + dependencyGraph.getVertices().size() + " xsd files changed, using the cached paths.");
+            // Keep the order of the paths, thus, the output is the same as the one of the previous run
+            Map<String, Set<String>> rootBitmap = new LinkedHashMap<>();
+            for (String path : buildCache.getRootPaths()) {
+                rootBitmap.put(path, new HashSet<>());
+            }
+            bitmap.put(rootFile, rootBitmap);
+            return bitmap;
+        }
+
+        Set<String> affectedFiles = dependencyGraph.getDependents(buildCache.getChangedFiles());
+        System.out.println("loadXsdStringIncremental: " + buildCache.getChangedFiles().size() + " of " + dependencyGraph.getVertices().size() + " xsd files changed, extracting "
+            + affectedFiles.size() + " files including or importing them again.");
+
+        // Extract the affected files one by one, keeping apart the substitution groups each declares
+        Map<String, Set<String>> allSubstitutionGroups = new HashMap<>();
+        Map<String, List<Set<String>>> roundPaths = new HashMap<>();
+        // The names of the groups and elements defined by the extracted files, before and after the change
+        Set<String> changedNames = new HashSet<>();
+        for (XSDSchemaVertex vertex : dependencyGraph.getVertices().keySet()) {
+            String canonicalPath = vertex.getUniqueId();
+            String filePath = buildCache.getFolderName(canonicalPath) + buildCache.getFileName(canonicalPath);
+            if (affectedFiles.contains(canonicalPath) || buildCache.getPaths(canonicalPath) == null) {
+                if (buildCache.getPaths(canonicalPath) != null) {
+                    changedNames.addAll(getDefinedNames(buildCache.getPaths(canonicalPath)));
+                }
+                Map<String, Map<String, Set<String>>> fileBitmap = new HashMap<>();
+                substitutionGroups = new HashMap<>();
+                loadXsdStringBase(buildCache.getFolderName(canonicalPath), buildCache.getFileName(canonicalPath), fileBitmap, false);
+                buildCache.setPaths(canonicalPath, fileBitmap.get(filePath) == null ? new HashSet<>() : new HashSet<>(fileBitmap.get(filePath).keySet()), substitutionGroups);
+            }
+            // Empty for the extracted files, resolving them adds their rounds
+            roundPaths.put(filePath, buildCache.getRoundPaths(canonicalPath));
+
+            for (String path : buildCache.getPaths(canonicalPath)) {
+                addPathToBitmap(filePath, path, bitmap);
+            }
+            for (Map.Entry<String, Set<String>> substitutionGroup : buildCache.getSubstitutionGroups(canonicalPath).entrySet()) {
+                allSubstitutionGroups.computeIfAbsent(substitutionGroup.getKey(), group -> new HashSet<>()).addAll(substitutionGroup.getValue());
+            }
+        }
+        substitutionGroups = allSubstitutionGroups;
+
+        // A file's rounds also depend on the files defining the groups it references, which need not be among its includes or imports. Thus, the cached rounds of all files referencing
+        // a changed name are dropped as well, until no further file is found (their own names change in turn).
+        for (String filePath : roundPaths.keySet()) {
+            if (roundPaths.get(filePath).isEmpty() && bitmap.get(filePath) != null) {
+                changedNames.addAll(getDefinedNames(bitmap.get(filePath).keySet()));
+            }
+        }
+        boolean staleFileFound = true;
+        while (staleFileFound) {
+            staleFileFound = false;
+            for (String filePath : roundPaths.keySet()) {
+                if (!roundPaths.get(filePath).isEmpty() && bitmap.get(filePath) != null && referencesGroup(bitmap.get(filePath).keySet(), changedNames)) {
+                    roundPaths.get(filePath).clear();
+                    changedNames.addAll(getDefinedNames(bitmap.get(filePath).keySet()));
+                    staleFileFound = true;
+                }
+            }
+        }
+
+        // Resolve the group refs of the affected and stale files only, all other files replay their cached rounds
+        bitmap = resolveGroupRefs(bitmap, XMLSchemaUtils.createBitmapDeepCopy(bitmap), rootFile, roundPaths);
+        buildCache.setRootPaths(bitmap.get(rootFile) == null ? new LinkedHashSet<>() : new LinkedHashSet<>(bitmap.get(rootFile).keySet()));
+
+        return bitmap;
+    }
+
+    /**
+     * @param paths the extracted paths of a file
+     * @return the names of the groups and elements the file defines, i.e., the first segments of its paths
+     */
+    private static Set<String> getDefinedNames(Set<String> paths) {
+        Set<String> names = new HashSet<>();
+        for (String path : paths) {
+            String[] pathSegments = path.split(delimiter);
+            if (pathSegments.length > 1) {
+                names.add(pathSegments[1]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param paths the extracted paths of a file
+     * @param names the names of groups
+     * @return true if any of the paths contains a group ref to one of the names
+     */
+    private static boolean referencesGroup(Set<String> paths, Set<String> names) {
+        String refSegment = delimiter + groupRef + delimiter;
+        for (String path : paths) {
+            int refIndex = path.indexOf(refSegment);
+            while (refIndex >= 0) {
+                int nameStart = refIndex + refSegment.length();
+                int nameEnd = path.indexOf(delimiter, nameStart);
+                if (names.contains(path.substring(nameStart, nameEnd < 0 ? path.length() : nameEnd))) {
+                    return true;
+                }
+                refIndex = path.indexOf(refSegment, nameStart);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the state kept while loading a schema, a load must not see the types or substitution groups of a previously loaded schema (e.g. another version of it).
+     */
+    private static void resetLoadState() {
+        substitutionGroups = new HashMap<>();
+        typeContentPaths = new HashMap<>();
+        typesInExpansion = new ArrayList<>();
+        cutExpansionIndex = Integer.MAX_VALUE;
+    }
+
     /**
      * This method has two purposes: 1) It resolves all "/groupRef/" instances to the actual group and its sub-elements, i.e., it replaces those elements in the bitmap deep copy 2) It removes the
      * group names, which were only left in the paths to allow the substitution step in 1). 3) after step 1) is repeated -substitutionRounds- number of times we handle substitutionGroups 4) when the
@@ -68,46 +231,74 @@ public final class XMLSchemaBitmapBuilder {
      * @return the substituted bitmap
      */
     public static Map<String, Map<String, Set<String>>> resolveGroupRefs(Map<String, Map<String, Set<String>>> bitmap, Map<String, Map<String, Set<String>>> bitmapDeepCopy, String rootFile) {
+        return resolveGroupRefs(bitmap, bitmapDeepCopy, rootFile, null);
+    }
+
+    /**
+     * Resolves the group refs like {@link #resolveGroupRefs(Map, Map, String)}, but takes the result of a round for a file from the given round paths if they already contain it.
+     * <p>
+     * A file's result of a round only depends on its own and the other files' results of the previous round, thus, files whose includes and imports did not change can replay the rounds of
+     * a previous run.
+     *
+     * @param bitmap the original bitmap for which we substitute the group refs
+     * @param bitmapDeepCopy a deep copy of the bitmap within which we do the de-facto substitutions
+     * @param rootFile the root xsd file if not null we consider this a truncate wish and throw out all other mappings
+     * @param roundPaths file -> paths after each round, the rounds computed here are added, null to compute all rounds of all files
+     * @return the substituted bitmap
+     */
+    public static Map<String, Map<String, Set<String>>> resolveGroupRefs(Map<String, Map<String, Set<String>>> bitmap, Map<String, Map<String, Set<String>>> bitmapDeepCopy, String rootFile,
+        Map<String, List<Set<String>>> roundPaths) {
         int progress = 0;
         for (int i = substitutionRounds; i > 0; i--) {
+            int round = substitutionRounds - i;
+            // Resolve the group refs of all files in parallel, each path's resolution only reads the bitmap of the previous round
+            List<String[]> refPaths = new ArrayList<>();
+            for (String filePath : bitmap.keySet()) {
+                if (bitmap.get(filePath) != null && !(roundPaths != null && roundPaths.containsKey(filePath) && roundPaths.get(filePath).size() > round)) {
+                    for (String xsdPath : bitmap.get(filePath).keySet()) {
+                        if (xsdPath.split(groupRef).length > 1) {
+                            refPaths.add(new String[] {filePath, xsdPath});
+                        }
+                    }
+                }
+            }
+            GroupRefResolution resolution = new GroupRefResolution(bitmap, refPaths, 0, refPaths.size());
+            ForkJoinPool.commonPool().invoke(resolution);
+
+            // Then apply the resolutions file by file and path by path in the order of the sequential resolution, so the deep copy is built exactly as before
             progress = 0;
+            int refPathIndex = 0;
             for (String filePath : bitmap.keySet()) {
                 System.out.print(
                     "Substituting groupRefs, round " + (substitutionRounds + 1 - i) + " progress: " + Math.round(100f * (float) ((float) (++progress) / (float) bitmap.keySet().size())) + "% \r");
-                if (bitmap.get(filePath) != null) {
-                    for (String xsdPath : bitmap.get(filePath).keySet()) {
-                        String[] pathSegments = xsdPath.split(groupRef);
-
-                        // If the path has no group ref we don't need to do anything
-                        if (pathSegments.length > 1) {
-                            // If the ref is at the root level we remove it.
-                            if (delimiter.equals(pathSegments[0])) {
-                                bitmapDeepCopy.get(filePath).remove(xsdPath);
-                                continue;
-                            }
-                            // We do not care for wrappers who do not rename their reference!
-                            if (pathSegments[0].replaceAll(delimiter, "").equals(pathSegments[1].replaceAll(delimiter, ""))) {
-                                System.out.println("resolveGroupRefs" + " ignoring wrappers who do not rename their reference: " + xsdPath);
-                                bitmapDeepCopy.get(filePath).remove(xsdPath);
-                                addPathToBitmap(filePath, pathSegments[0], bitmapDeepCopy);
-                                continue;
-                            }
-                            if (pathSegments.length > 2) {
-                                System.out.println("resolveGroupRefs" + " more than 2 path segments: " + pathSegments);
-                            }
-
-                            // We then search through the bitmap deep copy for the given segment.
-                            // The paths matching the given one are then stored into a list, because we need to replace them
-                            // we also remove the group name from the paths.
-                            List<String> groupPaths = gatherGroupPaths(bitmap, pathSegments[1], true);
+                // Take the result of this round from a previous run
+                if (roundPaths != null && roundPaths.containsKey(filePath) && roundPaths.get(filePath).size() > round) {
+                    Map<String, Set<String>> pathToFilesBitmap = new HashMap<>();
+                    for (String path : roundPaths.get(filePath).get(round)) {
+                        pathToFilesBitmap.put(path, new HashSet<>());
+                    }
+                    bitmapDeepCopy.put(filePath, pathToFilesBitmap);
+                    continue;
+                }
+                while (refPathIndex < refPaths.size() && refPaths.get(refPathIndex)[0].equals(filePath)) {
+                    String xsdPath = refPaths.get(refPathIndex)[1];
+                    if (resolution.messages[refPathIndex] != null) {
+                        System.out.println(resolution.messages[refPathIndex]);
+                    }
+                    bitmapDeepCopy.get(filePath).remove(xsdPath);
+                    for (String resolvedPath : resolution.resolvedPaths.get(refPathIndex)) {
+                        addPathToBitmap(filePath, resolvedPath, bitmapDeepCopy);
+                    }
+                    refPathIndex++;
+                }
+            }
 
-                            // We now replace the given path with those gathered from the reference.
-                            // For that we remove the given/old path and then add the new/resolved ones.
-                            bitmapDeepCopy.get(filePath).remove(xsdPath);
-                            for (String groupPath : groupPaths) {
-                                addPathToBitmap(filePath, pathSegments[0] + groupPath.replaceFirst(delimiter, ""), bitmapDeepCopy);
-                            }
-                        }
+            // Keep the result of this round for the next run
+            if (roundPaths != null) {
+                for (String filePath : bitmapDeepCopy.keySet()) {
+                    List<Set<String>> filePaths = roundPaths.computeIfAbsent(filePath, key -> new ArrayList<>());
+                    if (filePaths.size() == round && bitmapDeepCopy.get(filePath) != null) {
+                        filePaths.add(new HashSet<>(bitmapDeepCopy.get(filePath).keySet()));
                     }
                 }
             }
@@ -123,6 +314,10 @@ public final class XMLSchemaBitmapBuilder {
         progress = 0;
         for (String filePath : bitmap.keySet()) {
             System.out.print("Resolving substitutionGroups, progress: " + Math.round((100f * (float) ((float) (++progress) / (float) bitmap.keySet().size()))) + "% \r");
+            // Only the root file is kept when truncating, no need to substitute the others
+            if (rootFile != null && !rootFile.equals(filePath)) {
+                continue;
+            }
             if (bitmap.get(filePath) != null) {
                 for (String xsdPath : bitmap.get(filePath).keySet()) {
                     // Check if the given path contains any of the groups to substitute
@@ -162,6 +357,89 @@ public final class XMLSchemaBitmapBuilder {
         return bitmapDeepCopy;
     }
 
+    /**
+     * Resolves the group ref of a single path against the bitmap of the previous round.
+     *
+     * @param bitmap the bitmap of the previous round, only read
+     * @param xsdPath the path containing a group ref
+     * @param message receives the message to log for the path, if any
+     * @return the paths replacing the given one (none if it is just removed)
+     */
+    private static List<String> resolveGroupRef(Map<String, Map<String, Set<String>>> bitmap, String xsdPath, String[] message) {
+        String[] pathSegments = xsdPath.split(groupRef);
+        List<String> resolvedPaths = new ArrayList<>();
+
+        // If the ref is at the root level we remove it.
+        if (delimiter.equals(pathSegments[0])) {
+            return resolvedPaths;
+        }
+        // We do not care for wrappers who do not rename their reference!
+        if (pathSegments[0].replaceAll(delimiter, "").equals(pathSegments[1].replaceAll(delimiter, ""))) {
+            message[0] = "resolveGroupRefs" + " ignoring wrappers who do not rename their reference: " + xsdPath;
+            resolvedPaths.add(pathSegments[0]);
+            return resolvedPaths;
+        }
+        if (pathSegments.length > 2) {
+            message[0] = "resolveGroupRefs" + " more than 2 path segments: " + pathSegments;
+        }
+
+        // We then search through the bitmap for the given segment.
+        // The paths matching the given one replace the given path,
+        // we also remove the group name from the paths.
+        for (String groupPath : gatherGroupPaths(bitmap, pathSegments[1], true)) {
+            resolvedPaths.add(pathSegments[0] + groupPath.replaceFirst(delimiter, ""));
+        }
+        return resolvedPaths;
+    }
+
+    /**
+     * Resolves the group refs of a range of (file, path) pairs as fork-join task, the range is split in halves until it is small enough. Each pair's result is written to its own slot, so
+     * the tasks share nothing but the (read only) bitmap of the previous round.
+     */
+    private static final class GroupRefResolution extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int THRESHOLD = 16;
+
+        private final Map<String, Map<String, Set<String>>> bitmap;
+        private final List<String[]> refPaths;
+        private final int from;
+        private final int to;
+
+        // Per pair: the paths replacing it and the message to log, shared by all subtasks
+        private final List<List<String>> resolvedPaths;
+        private final String[] messages;
+
+        GroupRefResolution(Map<String, Map<String, Set<String>>> bitmap, List<String[]> refPaths, int from, int to) {
+            this(bitmap, refPaths, from, to, new ArrayList<>(Collections.nCopies(refPaths.size(), null)), new String[refPaths.size()]);
+        }
+
+        private GroupRefResolution(Map<String, Map<String, Set<String>>> bitmap, List<String[]> refPaths, int from, int to, List<List<String>> resolvedPaths, String[] messages) {
+            this.bitmap = bitmap;
+            this.refPaths = refPaths;
+            this.from = from;
+            this.to = to;
+            this.resolvedPaths = resolvedPaths;
+            this.messages = messages;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                String[] message = new String[1];
+                for (int i = from; i < to; i++) {
+                    message[0] = null;
+                    resolvedPaths.set(i, resolveGroupRef(bitmap, refPaths.get(i)[1], message));
+                    messages[i] = message[0];
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GroupRefResolution(bitmap, refPaths, from, middle, resolvedPaths, messages), new GroupRefResolution(bitmap, refPaths, middle, to, resolvedPaths, messages));
+        }
+    }
+
     /**
      * This auxiliary method allows gathering the xsdPaths containing the given subPath and if wanted to replace the subPath in the returned list of paths.
      *
@@ -199,6 +477,19 @@ public final class XMLSchemaBitmapBuilder {
     }
 
     private static void loadXsdStringBase(String folderName, String fileName, Map<String, Map<String, Set<String>>> bitmap) throws IOException {
+        loadXsdStringBase(folderName, fileName, bitmap, true);
+    }
+
+    /**
+     * Extracts the paths of the given xsd file into the bitmap.
+     *
+     * @param folderName the folder of the xsd file
+     * @param fileName the xsd file
+     * @param bitmap the bitmap to enhance with the information
+     * @param followExternals whether the included and imported files are extracted as well
+     * @throws IOException
+     */
+    private static void loadXsdStringBase(String folderName, String fileName, Map<String, Map<String, Set<String>>> bitmap, boolean followExternals) throws IOException {
         // Get all items
         List<XmlSchemaObject> schemaItems = XMLSchemaUtils.getSchemaItems(XMLSchemaUtils.openFileOrFolder(folderName, fileName), folderName);
 
@@ -230,6 +521,10 @@ public final class XMLSchemaBitmapBuilder {
             }
             // For all includes and imports call this method recursively, while avoiding circular dependencies
             else if (schemaItem instanceof XmlSchemaExternal) {
+                if (!followExternals) {
+                    continue;
+                }
+
                 // Get the relative location of the file to be loaded
                 String schemaLocation = ((XmlSchemaExternal) schemaItem).getSchemaLocation();
 
@@ -358,11 +653,11 @@ public final class XMLSchemaBitmapBuilder {
 
             // handle simplecontent
             if (schemaContent instanceof XmlSchemaSimpleContentExtension) {
-                handleExtension(filePath, pathSoFar, schemaContent, bitmap);
+                handleExtension(filePath, pathSoFar, schemaComplexType, schemaContent, bitmap);
             }
             // handle complexcontent
             else if (schemaContent instanceof XmlSchemaComplexContentExtension) {
-                handleExtension(filePath, pathSoFar, schemaContent, bitmap);
+                handleExtension(filePath, pathSoFar, schemaComplexType, schemaContent, bitmap);
             } else {
                 System.out.println("loadComplexTypeRecursively: " + "unhandled schemaContent: " + schemaContent);
             }
@@ -384,12 +679,12 @@ public final class XMLSchemaBitmapBuilder {
                 System.out.println("loadComplexTypeRecursively: " + "unhandled particle: " + schemaComplexType.getParticle());
             }
         }
-        // handle attributes
-        else if (schemaComplexType.getAttributes() != null && !schemaComplexType.getAttributes().isEmpty()) {
-            handleAttributes(filePath, pathSoFar, schemaComplexType.getAttributes(), bitmap);
-        } else {
+        else if (schemaComplexType.getAttributes() == null || schemaComplexType.getAttributes().isEmpty()) {
             System.out.println("loadComplexTypeRecursively: " + "unhandled complexType: " + schemaComplexType);
         }
+
+        // handle attributes, a complexType may have them in addition to its particle
+        handleAttributes(filePath, pathSoFar, schemaComplexType.getAttributes(), bitmap);
     }
 
     /**
@@ -414,7 +709,8 @@ public final class XMLSchemaBitmapBuilder {
     }
 
     /**
-     * Method to handle "attribute" xsd schema objects. Specifically these are bound within the schem contents.
+     * Method to handle "attribute" xsd schema objects. Specifically these are bound within the schem contents. Attributes are added with a "@" segment, e.g. /Origin/@lang, as produced by the
+     * example scan.
      *
      * @param filePath the path to the file containing schema object
      * @param pathSoFar the path leading to the schema object
@@ -426,7 +722,7 @@ public final class XMLSchemaBitmapBuilder {
         if (schemaAttribute.getName() != null) {
             // FIXME we knowingly ignore all native types
             if (!ignoredNamespaces.contains(schemaAttribute.getQName().getNamespaceURI())) {
-                pathSoFar += delimiter + schemaAttribute.getName();
+                pathSoFar += delimiter + attributePrefix + schemaAttribute.getName();
 
                 addPathToBitmap(filePath, pathSoFar, bitmap);
             }
@@ -475,11 +771,28 @@ public final class XMLSchemaBitmapBuilder {
             addPathToBitmap(filePath, pathSoFar, bitmap);
         }
 
+        handleAttributeGroupMembers(filePath, pathSoFar, schemaAttributeGroup, bitmap);
+    }
+
+    /**
+     * Auxiliary method used to handle the attributes of an attribute group, nested attribute group references are followed. The group name is not added to the path, as the attributes belong
+     * to the element referencing the group.
+     *
+     * @param filePath the path to the file containing schema object
+     * @param pathSoFar the path leading to the schema object
+     * @param schemaAttributeGroup the schema object to process
+     * @param bitmap the bitmap to enhance with the information
+     */
+    private static void handleAttributeGroupMembers(String filePath, String pathSoFar, XmlSchemaAttributeGroup schemaAttributeGroup, Map<String, Map<String, Set<String>>> bitmap) {
         for (XmlSchemaAttributeGroupMember schemaAttributeGroupMember : schemaAttributeGroup.getAttributes()) {
             if (schemaAttributeGroupMember instanceof XmlSchemaAttribute) {
                 handleAttribute(filePath, pathSoFar, (XmlSchemaAttribute) schemaAttributeGroupMember, bitmap);
-            } else if (schemaAttributeGroup instanceof XmlSchemaAttributeGroup) {
-                handleAttributeGroup(filePath, pathSoFar, (XmlSchemaAttributeGroup) schemaAttributeGroupMember, bitmap);
+            } else if (schemaAttributeGroupMember instanceof XmlSchemaAttributeGroupRef) {
+                XmlSchemaAttributeGroupRef schemaAttributeGroupRef = (XmlSchemaAttributeGroupRef) schemaAttributeGroupMember;
+
+                if (schemaAttributeGroupRef.getRef() != null && schemaAttributeGroupRef.getRef().getTarget() != null) {
+                    handleAttributeGroupMembers(filePath, pathSoFar, schemaAttributeGroupRef.getRef().getTarget(), bitmap);
+                }
             } else {
                 System.out.println("handleAttributeGroup: " + "Did not handle schema attribute group member: " + schemaAttributeGroupMember);
             }
@@ -488,28 +801,32 @@ public final class XMLSchemaBitmapBuilder {
 
     /**
      * Method to handle "extension" xsd schema objects. Specifically these are bound within the schem contents.
+     * <p>
+     * The content inherited from the base type is added as well. It is expanded only once per base type (see {@link #getTypeContentPaths(QName, XmlSchemaCollection)}).
      *
      * @param filePath the path to the file containing schema object
      * @param pathSoFar the path leading to the schema object
+     * @param schemaComplexType the complexType containing the extension, used to resolve the base type
      * @param schemaContent the schema object to process
      * @param bitmap the bitmap to enhance with the information
      */
-    private static void handleExtension(String filePath, String pathSoFar, XmlSchemaContent schemaContent, Map<String, Map<String, Set<String>>> bitmap) {
-        /*
-        // FIXME if needed
-        String extensionBaseName = "";
+    private static void handleExtension(String filePath, String pathSoFar, XmlSchemaComplexType schemaComplexType, XmlSchemaContent schemaContent,
+        Map<String, Map<String, Set<String>>> bitmap) {
+        QName extensionBaseName = null;
         if (schemaContent instanceof XmlSchemaSimpleContentExtension) {
-            extensionBaseName = ((XmlSchemaSimpleContentExtension) schemaContent).getBaseTypeName().getLocalPart();
+            extensionBaseName = ((XmlSchemaSimpleContentExtension) schemaContent).getBaseTypeName();
         } else if (schemaContent instanceof XmlSchemaComplexContentExtension) {
-            extensionBaseName = ((XmlSchemaComplexContentExtension) schemaContent).getBaseTypeName().getLocalPart();
+            extensionBaseName = ((XmlSchemaComplexContentExtension) schemaContent).getBaseTypeName();
         } else {
             System.out.println("handleExtensions: " + "unhandled schemaContent instance: " + schemaContent);
         }
-        if(!"".equals(extensionBaseName)) {
-            pathSoFar += delimiter + extensionBaseName
-            addPathToBitmap(filePath, pathSoFar, bitmap);
+
+        // Add the content inherited from the base type
+        if (extensionBaseName != null && schemaComplexType.getParent() != null) {
+            for (String baseTypePath : getTypeContentPaths(extensionBaseName, schemaComplexType.getParent().getParent())) {
+                addPathToBitmap(filePath, pathSoFar + baseTypePath, bitmap);
+            }
         }
-         */
 
         // For simple content we only need to handle the attributes
         if (schemaContent instanceof XmlSchemaSimpleContentExtension) {
@@ -542,6 +859,57 @@ public final class XMLSchemaBitmapBuilder {
         }
     }
 
+    /**
+     * Auxiliary method returning the content of the named type as paths relative to the type.
+     * <p>
+     * The type is expanded on first use only, the result is kept in a memo keyed by the type's QName and the same list is returned for all later uses of the same load. Simple types and unknown
+     * (e.g. built-in) types have no content. If the expansion ran into a type already being expanded further out, the recursion is stopped there and the (incomplete) result is not kept.
+     *
+     * @param typeName the QName of the type
+     * @param schemaCollection the schema collection to resolve the type in
+     * @return the (possibly empty) list of paths relative to the type
+     */
+    private static List<String> getTypeContentPaths(QName typeName, XmlSchemaCollection schemaCollection) {
+        List<String> contentPaths = typeContentPaths.get(typeName);
+        if (contentPaths != null) {
+            return contentPaths;
+        }
+        if (schemaCollection == null) {
+            return new ArrayList<>();
+        }
+
+        // A type (indirectly) extending itself has no further content to add
+        int expansionIndex = typesInExpansion.indexOf(typeName);
+        if (expansionIndex >= 0) {
+            cutExpansionIndex = Math.min(cutExpansionIndex, expansionIndex);
+            return new ArrayList<>();
+        }
+
+        int outerCutExpansionIndex = cutExpansionIndex;
+        cutExpansionIndex = Integer.MAX_VALUE;
+        expansionIndex = typesInExpansion.size();
+        typesInExpansion.add(typeName);
+
+        XmlSchemaType schemaType = schemaCollection.getTypeByQName(typeName);
+        contentPaths = new ArrayList<>();
+        if (schemaType instanceof XmlSchemaComplexType) {
+            // Expand the type into a scratch bitmap and keep the relative paths
+            Map<String, Map<String, Set<String>>> typeBitmap = new HashMap<>();
+            handleComplexType(typeName.toString(), "", (XmlSchemaComplexType) schemaType, typeBitmap);
+            if (typeBitmap.get(typeName.toString()) != null) {
+                contentPaths.addAll(typeBitmap.get(typeName.toString()).keySet());
+            }
+        }
+
+        typesInExpansion.remove(expansionIndex);
+        // Only keep the result if no recursion was stopped at a type further out, stopping at this type itself gives its complete content
+        if (cutExpansionIndex >= expansionIndex) {
+            typeContentPaths.put(typeName, contentPaths);
+        }
+        cutExpansionIndex = Math.min(outerCutExpansionIndex, cutExpansionIndex);
+        return contentPaths;
+    }
+
     /**
      * Method to handle "sequence" xsd schema objects
      *
@@ -587,6 +955,8 @@ public final class XMLSchemaBitmapBuilder {
      */
     private static void handleAny(String filePath, String pathSoFar, XmlSchemaAny schemaAny, Map<String, Map<String, Set<String>>> bitmap) {
         addPathToBitmap(filePath, pathSoFar, bitmap);
+        // The wildcard gets a path of its own, it is matched with the elements not declared by name at its position
+        addPathToBitmap(filePath, pathSoFar + delimiter + wildcardSegment, bitmap);
     }
 
     /**
@@ -662,7 +1032,7 @@ public final class XMLSchemaBitmapBuilder {
                     XmlSchemaAttributeGroupRef schemaAttributeGroupRef = (XmlSchemaAttributeGroupRef) schemaAttributeOrGroupRef;
 
                     if (schemaAttributeGroupRef.getRef() != null && schemaAttributeGroupRef.getRef().getTarget() != null) {
-                        handleAttributeGroup(filePath, pathSoFar, schemaAttributeGroupRef.getRef().getTarget(), bitmap);
+                        handleAttributeGroupMembers(filePath, pathSoFar, schemaAttributeGroupRef.getRef().getTarget(), bitmap);
                     }
                 } else {
                     System.out.println("handleAttributes: " + "unhandled: " + schemaAttributeOrGroupRef);
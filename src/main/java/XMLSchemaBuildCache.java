@@ -0,0 +1,292 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A cache of the per xsd file results of loading the schema as a bitmap, kept between runs in a binary file.
+ * <p>
+ * For each xsd file of the closure the cache holds a checksum of its content, its includes and imports, the paths extracted from it, the substitution groups it declares and its paths after
+ * each round of resolving the group refs. A file is changed if its checksum differs from the cached one. Only changed files and the files including or importing them (directly or
+ * indirectly) need to be extracted and resolved again, all other files take their results from the cache (see {@link XMLSchemaBitmapBuilder#loadXsdStringIncremental}).
+ */
+public final class XMLSchemaBuildCache {
+
+    // "XSDB" in ASCII
+    private static final int MAGIC = 0x58534442;
+    // Raised whenever the extraction of the paths changes, the cached paths of an older extraction must not be reused (2: xs:any is listed as a wildcard path)
+    private static final int VERSION = 2;
+
+    /**
+     * The cached results of one xsd file
+     */
+    private static final class Entry {
+
+        private long checksum;
+
+        // The folder and file name the file was loaded with, i.e., its key in the bitmap is folderName + fileName
+        private String folderName;
+        private String fileName;
+
+        // The folder and file name of each include and import, null if the file has not been parsed yet
+        private List<String[]> externals;
+
+        // The paths extracted from the file and the substitution groups declared while extracting them, null if the file has not been extracted yet
+        private Set<String> paths;
+        private Map<String, Set<String>> substitutionGroups;
+
+        // The paths after each round of resolving the group refs
+        private List<Set<String>> roundPaths = new ArrayList<>();
+    }
+
+    private final File cacheFile;
+
+    private final String rootFile;
+
+    // canonical path of the xsd file -> cached results
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    // The canonical paths of the files checked in this run and of those found changed
+    private final Set<String> checkedFiles = new HashSet<>();
+    private final Set<String> changedFiles = new HashSet<>();
+
+    // The paths of the root file after resolving the group refs and the substitution groups in the order of the bitmap, null if something changed
+    private Set<String> rootPaths;
+
+    private XMLSchemaBuildCache(File cacheFile, String rootFile) {
+        this.cacheFile = cacheFile;
+        this.rootFile = rootFile;
+    }
+
+    /**
+     * Loads the cache from the given file. A missing file, a file of another root xsd or of another version gives an empty cache, i.e., all files are extracted.
+     *
+     * @param cacheFilePath the path to the cache file
+     * @param rootFile the folder and file name of the main xsd
+     * @return the cache
+     */
+    public static XMLSchemaBuildCache load(String cacheFilePath, String rootFile) {
+        XMLSchemaBuildCache cache = new XMLSchemaBuildCache(new File(cacheFilePath), rootFile);
+        if (!cache.cacheFile.exists()) {
+            System.out.println("XMLSchemaBuildCache: " + "no cache in " + cacheFilePath + ", extracting all xsd files.");
+            return cache;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache.cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !rootFile.equals(in.readUTF())) {
+                System.out.println("XMLSchemaBuildCache: " + "the cache in " + cacheFilePath + " is of another version or main xsd, extracting all xsd files.");
+                return cache;
+            }
+
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String canonicalPath = in.readUTF();
+                Entry entry = new Entry();
+                entry.checksum = in.readLong();
+                entry.folderName = in.readUTF();
+                entry.fileName = in.readUTF();
+                entry.externals = new ArrayList<>();
+                int externalCount = in.readInt();
+                for (int j = 0; j < externalCount; j++) {
+                    entry.externals.add(new String[] {in.readUTF(), in.readUTF()});
+                }
+                entry.paths = readStrings(in);
+                entry.substitutionGroups = new HashMap<>();
+                int substitutionGroupCount = in.readInt();
+                for (int j = 0; j < substitutionGroupCount; j++) {
+                    entry.substitutionGroups.put(in.readUTF(), readStrings(in));
+                }
+                int roundCount = in.readInt();
+                for (int j = 0; j < roundCount; j++) {
+                    entry.roundPaths.add(readStrings(in));
+                }
+                cache.entries.put(canonicalPath, entry);
+            }
+            cache.rootPaths = in.readBoolean() ? readStrings(in) : null;
+        } catch (IOException e) {
+            System.out.println("XMLSchemaBuildCache: " + "could not read the cache in " + cacheFilePath + ", extracting all xsd files: " + e.getMessage());
+            cache.entries.clear();
+            cache.rootPaths = null;
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the cache. Only the files of the current closure (i.e., checked with {@link #isUnchanged(File, String, String)} in this run) that were fully loaded are kept.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Map<String, Entry> completeEntries = new LinkedHashMap<>();
+        for (String canonicalPath : checkedFiles) {
+            Entry entry = entries.get(canonicalPath);
+            if (entry.externals != null && entry.paths != null) {
+                completeEntries.put(canonicalPath, entry);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(rootFile);
+
+            out.writeInt(completeEntries.size());
+            for (Map.Entry<String, Entry> completeEntry : completeEntries.entrySet()) {
+                Entry entry = completeEntry.getValue();
+                out.writeUTF(completeEntry.getKey());
+                out.writeLong(entry.checksum);
+                out.writeUTF(entry.folderName);
+                out.writeUTF(entry.fileName);
+                out.writeInt(entry.externals.size());
+                for (String[] external : entry.externals) {
+                    out.writeUTF(external[0]);
+                    out.writeUTF(external[1]);
+                }
+                writeStrings(out, entry.paths);
+                out.writeInt(entry.substitutionGroups.size());
+                for (Map.Entry<String, Set<String>> substitutionGroup : entry.substitutionGroups.entrySet()) {
+                    out.writeUTF(substitutionGroup.getKey());
+                    writeStrings(out, substitutionGroup.getValue());
+                }
+                out.writeInt(entry.roundPaths.size());
+                for (Set<String> paths : entry.roundPaths) {
+                    writeStrings(out, paths);
+                }
+            }
+            out.writeBoolean(rootPaths != null);
+            if (rootPaths != null) {
+                writeStrings(out, rootPaths);
+            }
+        }
+    }
+
+    /**
+     * Checks the given xsd file against the cache and registers it as part of the closure. A changed file loses all its cached results.
+     *
+     * @param xsdFile the xsd file
+     * @param folderName the folder the file is loaded with
+     * @param fileName the file name the file is loaded with
+     * @return true if the content of the file is the cached one
+     * @throws IOException
+     */
+    public boolean isUnchanged(File xsdFile, String folderName, String fileName) throws IOException {
+        String canonicalPath = xsdFile.getCanonicalPath();
+        if (!checkedFiles.add(canonicalPath)) {
+            return !changedFiles.contains(canonicalPath);
+        }
+
+        long checksum = FileUtils.checksumCRC32(xsdFile);
+        Entry entry = entries.get(canonicalPath);
+        if (entry != null && entry.checksum == checksum && entry.folderName.equals(folderName) && entry.fileName.equals(fileName)) {
+            return true;
+        }
+
+        entry = new Entry();
+        entry.checksum = checksum;
+        entry.folderName = folderName;
+        entry.fileName = fileName;
+        entries.put(canonicalPath, entry);
+        changedFiles.add(canonicalPath);
+        rootPaths = null;
+        return false;
+    }
+
+    /**
+     * @return the canonical paths of the files found changed in this run
+     */
+    public Set<String> getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * @param canonicalPath the canonical path of the xsd file
+     * @return the folder and file name of each include and import of the file, null if it has to be parsed
+     */
+    public List<String[]> getExternals(String canonicalPath) {
+        return entries.get(canonicalPath).externals;
+    }
+
+    public void setExternals(String canonicalPath, List<String[]> externals) {
+        entries.get(canonicalPath).externals = externals;
+    }
+
+    public String getFolderName(String canonicalPath) {
+        return entries.get(canonicalPath).folderName;
+    }
+
+    public String getFileName(String canonicalPath) {
+        return entries.get(canonicalPath).fileName;
+    }
+
+    /**
+     * @param canonicalPath the canonical path of the xsd file
+     * @return the paths extracted from the file, null if it has to be extracted
+     */
+    public Set<String> getPaths(String canonicalPath) {
+        return entries.get(canonicalPath).paths;
+    }
+
+    public Map<String, Set<String>> getSubstitutionGroups(String canonicalPath) {
+        return entries.get(canonicalPath).substitutionGroups;
+    }
+
+    /**
+     * Stores the extraction of a file, this invalidates its resolved paths.
+     *
+     * @param canonicalPath the canonical path of the xsd file
+     * @param paths the paths extracted from the file
+     * @param substitutionGroups the substitution groups declared while extracting the paths
+     */
+    public void setPaths(String canonicalPath, Set<String> paths, Map<String, Set<String>> substitutionGroups) {
+        Entry entry = entries.get(canonicalPath);
+        entry.paths = paths;
+        entry.substitutionGroups = substitutionGroups;
+        entry.roundPaths = new ArrayList<>();
+        rootPaths = null;
+    }
+
+    /**
+     * @param canonicalPath the canonical path of the xsd file
+     * @return the paths of the file after each round of resolving the group refs
+     */
+    public List<Set<String>> getRoundPaths(String canonicalPath) {
+        return entries.get(canonicalPath).roundPaths;
+    }
+
+    public Set<String> getRootPaths() {
+        return rootPaths;
+    }
+
+    public void setRootPaths(Set<String> rootPaths) {
+        this.rootPaths = rootPaths;
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> strings = new LinkedHashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+}
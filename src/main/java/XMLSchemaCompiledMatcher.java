@@ -0,0 +1,274 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A matcher compiled from the xsd paths of a {@link XMLSchemaPathIndex}, it gives the same matches as {@link XMLSchemaPathIndex#match(String)} without comparing the node path to every xsd path.
+ * <p>
+ * Every element name of the xsd paths gets an integer id and the paths are compiled into an automaton over these ids (Aho-Corasick): a trie of all paths with a failure link per state pointing to
+ * the longest suffix that is again a prefix of some path. The transitions are kept in one flat open addressing table keyed by (state, element name id), the matched ids per state in one flat
+ * array. A node path is run through the automaton segment by segment, an xsd path matches if the automaton passes its end state, i.e., if the xsd path occurs within the node path.
+ * <p>
+ * An xsd path ending in a wildcard (xs:any) is compiled without its wildcard segment, it is a candidate if the automaton passes the end state of the path leading to the wildcard and the
+ * node path goes on with a further segment.
+ * <p>
+ * The hits are confirmed with {@link XMLSchemaPathIndex#matches(int, String)}, which only looks at the first occurrence of an xsd path. Xsd paths that do not consist of full segments (e.g.
+ * with the namespace prefix cut off within a segment) cannot be compiled and are always matched with it.
+ */
+public final class XMLSchemaCompiledMatcher {
+
+    private static final int ROOT = 0;
+    private static final long EMPTY = -1L;
+
+    private final XMLSchemaPathIndex pathIndex;
+    private final String delimiter;
+
+    // element name -> element name id
+    private final Map<String, Integer> symbols;
+
+    // The transitions: (state << 32 | element name id) -> target state, open addressing with linear probing
+    private final long[] transitionKeys;
+    private final int[] transitionTargets;
+    private final int transitionMask;
+
+    // state -> failure state
+    private final int[] failure;
+
+    // The ids of the xsd paths ending in a state (or in a state of its failure chain): outputs[outputStart[state] .. outputStart[state + 1]]
+    private final int[] outputStart;
+    private final int[] outputs;
+
+    // The ids of the xsd paths whose wildcard follows a state (or a state of its failure chain): wildcardOutputs[wildcardOutputStart[state] .. wildcardOutputStart[state + 1]]
+    private final int[] wildcardOutputStart;
+    private final int[] wildcardOutputs;
+
+    // The ids of the xsd paths that could not be compiled
+    private final int[] uncompiledIds;
+
+    private XMLSchemaCompiledMatcher(XMLSchemaPathIndex pathIndex, String delimiter, Map<String, Integer> symbols, long[] transitionKeys, int[] transitionTargets, int[] failure,
+        int[] outputStart, int[] outputs, int[] wildcardOutputStart, int[] wildcardOutputs, int[] uncompiledIds) {
+        this.pathIndex = pathIndex;
+        this.delimiter = delimiter;
+        this.symbols = symbols;
+        this.transitionKeys = transitionKeys;
+        this.transitionTargets = transitionTargets;
+        this.transitionMask = transitionKeys.length - 1;
+        this.failure = failure;
+        this.outputStart = outputStart;
+        this.outputs = outputs;
+        this.wildcardOutputStart = wildcardOutputStart;
+        this.wildcardOutputs = wildcardOutputs;
+        this.uncompiledIds = uncompiledIds;
+    }
+
+    /**
+     * Compiles the xsd paths of the given index.
+     *
+     * @param pathIndex the index to compile
+     * @param delimiter the path delimiter
+     * @return the matcher
+     */
+    public static XMLSchemaCompiledMatcher compile(XMLSchemaPathIndex pathIndex, String delimiter) {
+        Map<String, Integer> symbols = new HashMap<>();
+        Map<Long, Integer> trie = new HashMap<>();
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        List<List<Integer>> stateWildcardOutputs = new ArrayList<>();
+        List<Integer> uncompiledIds = new ArrayList<>();
+        stateOutputs.add(new ArrayList<>());
+        stateWildcardOutputs.add(new ArrayList<>());
+
+        // Build the trie of all xsd paths over the element name ids, the paths ending in a wildcard without it
+        for (int id = 0; id < pathIndex.size(); id++) {
+            boolean wildcard = pathIndex.getWildcardParent(id) != null;
+            String structurePath = wildcard ? pathIndex.getWildcardParent(id).substring(0, pathIndex.getWildcardParent(id).length() - delimiter.length()) : pathIndex.getStructurePath(id);
+            if (!structurePath.startsWith(delimiter) || structurePath.length() == delimiter.length() || structurePath.endsWith(delimiter)
+                || structurePath.contains(delimiter + delimiter)) {
+                uncompiledIds.add(id);
+                continue;
+            }
+
+            int state = ROOT;
+            for (String segment : structurePath.substring(delimiter.length()).split(delimiter, -1)) {
+                int symbol = symbols.computeIfAbsent(segment, name -> symbols.size());
+                Integer next = trie.get(transitionKey(state, symbol));
+                if (next == null) {
+                    next = stateOutputs.size();
+                    stateOutputs.add(new ArrayList<>());
+                    stateWildcardOutputs.add(new ArrayList<>());
+                    trie.put(transitionKey(state, symbol), next);
+                }
+                state = next;
+            }
+            (wildcard ? stateWildcardOutputs : stateOutputs).get(state).add(id);
+        }
+
+        // Group the transitions by state for the breadth first walk
+        int stateCount = stateOutputs.size();
+        List<List<long[]>> children = new ArrayList<>();
+        for (int state = 0; state < stateCount; state++) {
+            children.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, Integer> transition : trie.entrySet()) {
+            children.get((int) (transition.getKey() >>> 32)).add(new long[] {transition.getKey() & 0xFFFFFFFFL, transition.getValue()});
+        }
+
+        // Compute the failure links breadth first, a state's failure state is shallower, thus, its outputs are complete when they are added
+        int[] failure = new int[stateCount];
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        for (long[] child : children.get(ROOT)) {
+            toVisit.add((int) child[1]);
+        }
+        while (!toVisit.isEmpty()) {
+            int state = toVisit.poll();
+            stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+            stateWildcardOutputs.get(state).addAll(stateWildcardOutputs.get(failure[state]));
+            for (long[] child : children.get(state)) {
+                int symbol = (int) child[0];
+                int target = (int) child[1];
+                int fallback = failure[state];
+                while (fallback != ROOT && !trie.containsKey(transitionKey(fallback, symbol))) {
+                    fallback = failure[fallback];
+                }
+                Integer fallbackTarget = trie.get(transitionKey(fallback, symbol));
+                failure[target] = fallbackTarget == null ? ROOT : fallbackTarget;
+                toVisit.add(target);
+            }
+        }
+
+        // Flatten the transitions and the outputs
+        int capacity = Integer.highestOneBit(Math.max(2, trie.size() * 2 - 1)) << 1;
+        long[] transitionKeys = new long[capacity];
+        int[] transitionTargets = new int[capacity];
+        Arrays.fill(transitionKeys, EMPTY);
+        for (Map.Entry<Long, Integer> transition : trie.entrySet()) {
+            int slot = slot(transition.getKey(), capacity - 1);
+            while (transitionKeys[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            transitionKeys[slot] = transition.getKey();
+            transitionTargets[slot] = transition.getValue();
+        }
+
+        int[] outputStart = new int[stateCount + 1];
+        int[] outputs = flatten(stateOutputs, outputStart);
+        int[] wildcardOutputStart = new int[stateCount + 1];
+        int[] wildcardOutputs = flatten(stateWildcardOutputs, wildcardOutputStart);
+
+        return new XMLSchemaCompiledMatcher(pathIndex, delimiter, symbols, transitionKeys, transitionTargets, failure, outputStart, outputs, wildcardOutputStart, wildcardOutputs,
+            uncompiledIds.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Flattens the ids per state into one array, the ids of a state are found from its start to the start of the next state.
+     */
+    private static int[] flatten(List<List<Integer>> stateIds, int[] start) {
+        for (int state = 0; state < stateIds.size(); state++) {
+            start[state + 1] = start[state] + stateIds.get(state).size();
+        }
+        int[] ids = new int[start[stateIds.size()]];
+        for (int state = 0; state < stateIds.size(); state++) {
+            for (int i = 0; i < stateIds.get(state).size(); i++) {
+                ids[start[state] + i] = stateIds.get(state).get(i);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Matches the given node path against all compiled xsd paths.
+     *
+     * @param nodePath the path of an xml node
+     * @return the ids of all xsd paths matching the node path, in ascending order as returned by {@link XMLSchemaPathIndex#match(String)}
+     */
+    public int[] match(String nodePath) {
+        int[] matches = new int[8];
+        int count = 0;
+
+        // Run the node path through the automaton, collecting the xsd paths ending at each segment
+        int state = ROOT;
+        int segmentStart = nodePath.startsWith(delimiter) ? delimiter.length() : 0;
+        while (segmentStart <= nodePath.length()) {
+            int segmentEnd = nodePath.indexOf(delimiter, segmentStart);
+            if (segmentEnd < 0) {
+                segmentEnd = nodePath.length();
+            }
+            Integer symbol = symbols.get(nodePath.substring(segmentStart, segmentEnd));
+            state = symbol == null ? ROOT : next(state, symbol);
+
+            for (int i = outputStart[state]; i < outputStart[state + 1]; i++) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = outputs[i];
+            }
+            // The wildcards following the segment need a further one
+            if (segmentEnd < nodePath.length()) {
+                for (int i = wildcardOutputStart[state]; i < wildcardOutputStart[state + 1]; i++) {
+                    if (count == matches.length) {
+                        matches = Arrays.copyOf(matches, count * 2);
+                    }
+                    matches[count++] = wildcardOutputs[i];
+                }
+            }
+            segmentStart = segmentEnd + delimiter.length();
+        }
+
+        // An xsd path may occur more than once in the node path
+        Arrays.sort(matches, 0, count);
+        int[] confirmed = new int[count + uncompiledIds.length];
+        int confirmedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i == 0 || matches[i] != matches[i - 1]) && pathIndex.matches(matches[i], nodePath)) {
+                confirmed[confirmedCount++] = matches[i];
+            }
+        }
+        for (int id : uncompiledIds) {
+            if (pathIndex.matches(id, nodePath)) {
+                confirmed[confirmedCount++] = id;
+            }
+        }
+        if (uncompiledIds.length > 0) {
+            Arrays.sort(confirmed, 0, confirmedCount);
+        }
+
+        return Arrays.copyOf(confirmed, confirmedCount);
+    }
+
+    /**
+     * Follows the transition of the given element name id, falling back along the failure links if the state has none.
+     */
+    private int next(int state, int symbol) {
+        while (true) {
+            long key = transitionKey(state, symbol);
+            for (int slot = slot(key, transitionMask); transitionKeys[slot] != EMPTY; slot = (slot + 1) & transitionMask) {
+                if (transitionKeys[slot] == key) {
+                    return transitionTargets[slot];
+                }
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    private static long transitionKey(int state, int symbol) {
+        return ((long) state << 32) | symbol;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    public int getStateCount() {
+        return failure.length;
+    }
+
+    public int getUncompiledCount() {
+        return uncompiledIds.length;
+    }
+}
@@ -1,19 +1,30 @@
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.configuration2.XMLConfiguration;
 import org.apache.commons.configuration2.builder.FileBasedConfigurationBuilder;
 import org.apache.commons.configuration2.builder.fluent.Parameters;
 import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.configuration2.io.FileHandler;
 import org.apache.commons.configuration2.tree.ImmutableNode;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 
 /**
  * This code allows to check how much of the XSD schema in xsdMain are covered by the example XML files in the xmlMain folder.
@@ -26,9 +37,8 @@ import org.apache.commons.io.FilenameUtils;
  * <p>
  * what we do not include:
  * <li>
- * <i>We cannot follow the "base" attribute references of XSD extensions, i.e., the simple or complexTypes they point to. We do however consider the effective extensions, i.e., groups, sequences,
- * attributes defined within. BUT at the moment only the attribute content existed and is considered. We do follow refs to attributegroups.</i>
- * <i>we list XSD-any but do not match it with the XML</i>
+ * <i>We follow the "base" attribute references of XSD extensions, the content of the base type is expanded once and reused. We do follow refs to attributegroups.</i>
+ * <i>we list XSD-any but only match it with the XML with the schema model (--model dag)</i>
  * <i>we resolve group references, but not wrappers who are not renamed properly, e.g., if a group named "ServiceFacilityGroup" references a group named "siriServiceFacilityGroup"</i>
  * </li>
  * <p>
@@ -44,9 +54,38 @@ public final class XMLSchemaCoverageChecker {
     private static Map<String, Map<String, Set<String>>> allPathsBitmap = new HashMap<>();
 
     private static List<String> ignoredFiles = new ArrayList<>();
+
+    // Cache of node path -> matching xsd path ids, shared across all example files
+    private static XMLSchemaPathMatchCache matchCache;
+
+    // The schema model and its coverage, only used if the schema is loaded as DAG (--model dag) instead of the bitmap
+    private static XSDSchemaModel schemaModel;
+    private static XSDSchemaModelCoverage schemaModelCoverage;
+
+    // Covering examples per xsd path id of the match cache's index with a bounded memory budget, null if they are kept in the bitmap
+    private static XMLSchemaCoverageStore coverageStore;
+
+    // Occurrences per xsd path id of the match cache's index, null unless occurrences are counted (--count)
+    private static XMLSchemaOccurrenceCounter occurrenceCounter;
+
+    // Collect the node paths of the examples with the tag tokenizer instead of the parser where possible (--parser fast)
+    private static boolean fastParser = false;
+
+    // The usage estimates of a sample of the examples (--sample), null if all examples are checked
+    private static XMLSchemaSampler sampler;
+
+    // Further schema versions checked in the same scan (repeated --xsd), the first --xsd and --main are kept in the fields above
+    private static List<XMLSchemaVersionCoverage> otherVersions = new ArrayList<>();
 	
 	public static boolean verbose=false;
 
+    // The shard (1-based) of the example files to check and the number of shards, 1/1 checks all files
+    private static int shardIndex = 1;
+    private static int shardCount = 1;
+
+    // The canonical path of the example folder, shards are assigned on the paths relative to it
+    private static String xmlRootPath = "";
+
 
     //private static boolean print = false;
 
@@ -61,6 +100,35 @@ public final class XMLSchemaCoverageChecker {
         String xmlMain = "";
         String outputFilePath = "";
         boolean checkCircularDependency = false;
+        int matchCacheSize = XMLSchemaPathMatchCache.DEFAULT_CAPACITY;
+        String outputFormat = "csv";
+        String schemaModelType = "paths";
+        String matcherType = "interpreted";
+        boolean lazy = false;
+        boolean countOccurrences = false;
+        long memoryBudget = 0;
+        boolean progress = false;
+        long progressInterval = 0;
+        int topK = XMLSchemaOccurrenceCounter.DEFAULT_TOP_K;
+        Set<String> rootElementNames = new HashSet<>();
+        Set<String> includedNamespaces = new HashSet<>();
+        String branchesFilePath = "";
+        String xsdCacheFilePath = "";
+        String convertFilePath = "";
+        String minimizeFilePath = "";
+        long minimizeSearchNodes = 0;
+        String diffOldFilePath = "";
+        String diffNewFilePath = "";
+        List<String> mergeFilePaths = new ArrayList<>();
+        List<String> xsdFolders = new ArrayList<>();
+        List<String> xsdMainFileNames = new ArrayList<>();
+        long sampleSize = 0;
+        long sampleSeed = 1;
+        boolean sampleStratify = false;
+        double samplePrecision = 0.01;
+        int servePort = -1;
+        int serveThreads = Runtime.getRuntime().availableProcessors();
+        int serveExamples = XMLSchemaLiveCoverage.DEFAULT_EXAMPLES_PER_PATH;
         while (x < args.length) {
 			if (args[x].equals("--verbose")){
 				verbose=true;
@@ -72,11 +140,36 @@ public final class XMLSchemaCoverageChecker {
                 System.out.println("see also: https://github.com/openTdataCH/xsd-element-coverage-checker\n");
                 System.out.println("Parameters:\n");
                 System.out.println("--help this help\n");
-                System.out.println("--main main xsd file\n");
-                System.out.println("--xsd Schemafolder\n");
-                System.out.println("--xml XML example folder\n");
+                System.out.println("--main main xsd file (repeatable, one per --xsd, or one for all)\n");
+                System.out.println("--xsd Schemafolder (repeatable, each schema version is checked in the same scan and written to its own --out file)\n");
+                System.out.println("--xml XML example folder, or a file (- for stdin) with a stream of concatenated or newline delimited XML documents\n");
                 System.out.println("--out output file (CSV)\n");
+                System.out.println("--model how the schema is held in memory: paths (default, bitmap of all paths) or dag (shared type/element nodes)\n");
+                System.out.println("--lazy with --model dag, only expand the types the examples descend into\n");
+                System.out.println("--xsd-cache file to keep the extracted paths per xsd file in between runs, only changed xsd files and the files including or importing them are extracted again (--model paths only)\n");
+                System.out.println("--root-element only analyse the schema below this global element (repeatable, implies --model dag)\n");
+                System.out.println("--include-namespace only analyse elements of this target namespace (repeatable, implies --model dag)\n");
+                System.out.println("--count also write the number of occurrences and the examples with the most occurrences per path to the CSV\n");
+                System.out.println("--top-k number of examples with the most occurrences listed per path with --count (default " + XMLSchemaOccurrenceCounter.DEFAULT_TOP_K + ")\n");
+                System.out.println("--branches output file (CSV) for the coverage of choice alternatives and optional particles (implies --model dag)\n");
+                System.out.println("--format output format of --out: csv (default) or bin (compact binary)\n");
+                System.out.println("--convert binary coverage file to convert into the CSV given by --out\n");
+                System.out.println("--shard i/N only check the i-th of N deterministic partitions of the example files (e.g. 2/4), use --format bin for the partial result\n");
+                System.out.println("--merge partial coverage files (CSV or binary) to merge into the file given by --out\n");
+                System.out.println("--minimize coverage file (CSV or binary) to compute a small set of examples covering all covered paths for, written to --out if given\n");
+                System.out.println("--minimize-search-nodes with --minimize, search up to this many branch and bound nodes for a smaller cover than the greedy one\n");
+                System.out.println("--diff old and new coverage file (CSV or binary) to compare, the changes are written to --out if given, exits with 2 on newly uncovered paths\n");
+                System.out.println("--memory-budget MB of memory for the covering examples, more are spilled to temporary files (CSV output with --model paths only)\n");
+                System.out.println("--progress reports files/s, nodes/s, MB/s, ETA and heap use during the example scan\n");
+                System.out.println("--progress-interval seconds between two progress reports (default 1 on a terminal, 30 otherwise)\n");
 				System.out.println("--verbose writes more output to standard output during processing\n");
+                System.out.println("--matcher how node paths missing in the match cache are matched: interpreted (default, against every xsd path) or compiled (automaton over element name ids, --model paths only)\n");
+                System.out.println("--sample maximum number of example files to check, drawn randomly from the --xml folder, adds the estimated share of files using each path to the CSV (--model paths only)\n");
+                System.out.println("--sample-seed seed of the random sample (default 1), the same seed draws the same files\n");
+                System.out.println("--sample-stratify draws the sample from each folder in proportion to its number of files\n");
+                System.out.println("--sample-precision stops the sample early once the 95% intervals of all paths are within +/- this share (default 0.01, 0 to check the whole sample)\n");
+                System.out.println("--parser how the examples are read: full (default, xml parser) or fast (tag tokenizer for trusted UTF-8 examples, falls back to the parser, --model paths only)\n");
+                System.out.println("--match-cache-size maximum number of node paths whose matches are cached (default " + XMLSchemaPathMatchCache.DEFAULT_CAPACITY + ")\n");
                 System.exit(0);
 
             } else if (args[x].equals("--main")) {
@@ -84,14 +177,14 @@ public final class XMLSchemaCoverageChecker {
                     System.out.println("no main file defined/n");
                     System.exit(1);
                 }
-                xsdMainFileName = args[x + 1];
+                xsdMainFileNames.add(args[x + 1]);
                 x = x + 1;
             } else if (args[x].equals("--xsd")) {
                 if (x + 1 >= args.length) {
                     System.out.println("no xsd directory defined/n");
                     System.exit(1);
                 }
-                xsdMain = args[x + 1] + "\\";
+                xsdFolders.add(args[x + 1]);
                 x = x + 1;
             } else if (args[x].equals("--xml")) {
                 if (x + 1 >= args.length) {
@@ -107,12 +200,279 @@ public final class XMLSchemaCoverageChecker {
                 }
                 outputFilePath = args[x + 1];
                 x = x + 1;
+            } else if (args[x].equals("--model")) {
+                if (x + 1 >= args.length || !(args[x + 1].equals("paths") || args[x + 1].equals("dag"))) {
+                    System.out.println("no valid schema model defined (paths or dag)/n");
+                    System.exit(1);
+                }
+                schemaModelType = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--lazy")) {
+                lazy = true;
+            } else if (args[x].equals("--xsd-cache")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no xsd cache file defined/n");
+                    System.exit(1);
+                }
+                xsdCacheFilePath = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--memory-budget")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid memory budget defined (MB)/n");
+                    System.exit(1);
+                }
+                memoryBudget = Long.parseLong(args[x + 1]) * 1024 * 1024;
+                x = x + 1;
+            } else if (args[x].equals("--progress")) {
+                progress = true;
+            } else if (args[x].equals("--progress-interval")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid progress interval defined/n");
+                    System.exit(1);
+                }
+                progress = true;
+                progressInterval = Long.parseLong(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--count")) {
+                countOccurrences = true;
+            } else if (args[x].equals("--top-k")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid number of top examples defined/n");
+                    System.exit(1);
+                }
+                topK = Integer.parseInt(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--branches")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no branch coverage output file defined/n");
+                    System.exit(1);
+                }
+                branchesFilePath = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--root-element")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no root element defined/n");
+                    System.exit(1);
+                }
+                rootElementNames.addAll(Arrays.asList(args[x + 1].split(",")));
+                x = x + 1;
+            } else if (args[x].equals("--include-namespace")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no namespace defined/n");
+                    System.exit(1);
+                }
+                includedNamespaces.add(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--format")) {
+                if (x + 1 >= args.length || !(args[x + 1].equals("csv") || args[x + 1].equals("bin"))) {
+                    System.out.println("no valid output format defined (csv or bin)/n");
+                    System.exit(1);
+                }
+                outputFormat = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--convert")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no binary coverage file to convert defined/n");
+                    System.exit(1);
+                }
+                convertFilePath = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--diff")) {
+                if (x + 2 >= args.length) {
+                    System.out.println("no old and new coverage file to diff defined/n");
+                    System.exit(1);
+                }
+                diffOldFilePath = args[x + 1];
+                diffNewFilePath = args[x + 2];
+                x = x + 2;
+            } else if (args[x].equals("--minimize")) {
+                if (x + 1 >= args.length) {
+                    System.out.println("no coverage file to minimize defined/n");
+                    System.exit(1);
+                }
+                minimizeFilePath = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--minimize-search-nodes")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("\\d+")) {
+                    System.out.println("no valid number of search nodes defined/n");
+                    System.exit(1);
+                }
+                minimizeSearchNodes = Long.parseLong(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--shard")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("\\d+/\\d+")) {
+                    System.out.println("no shard defined (i/N)/n");
+                    System.exit(1);
+                }
+                shardIndex = Integer.parseInt(args[x + 1].split("/")[0]);
+                shardCount = Integer.parseInt(args[x + 1].split("/")[1]);
+                if (shardIndex < 1 || shardIndex > shardCount) {
+                    System.out.println("shard index must be between 1 and " + shardCount + "/n");
+                    System.exit(1);
+                }
+                x = x + 1;
+            } else if (args[x].equals("--merge")) {
+                while (x + 1 < args.length && !args[x + 1].startsWith("--")) {
+                    mergeFilePaths.add(args[x + 1]);
+                    x = x + 1;
+                }
+                if (mergeFilePaths.isEmpty()) {
+                    System.out.println("no partial coverage files to merge defined/n");
+                    System.exit(1);
+                }
+            } else if (args[x].equals("--matcher")) {
+                if (x + 1 >= args.length || !(args[x + 1].equals("interpreted") || args[x + 1].equals("compiled"))) {
+                    System.out.println("no valid matcher defined (interpreted or compiled)/n");
+                    System.exit(1);
+                }
+                matcherType = args[x + 1];
+                x = x + 1;
+            } else if (args[x].equals("--sample")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid sample size defined/n");
+                    System.exit(1);
+                }
+                sampleSize = Long.parseLong(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--sample-seed")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("-?\\d+")) {
+                    System.out.println("no valid sample seed defined/n");
+                    System.exit(1);
+                }
+                sampleSeed = Long.parseLong(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--sample-stratify")) {
+                sampleStratify = true;
+            } else if (args[x].equals("--sample-precision")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("0|0?\\.\\d+")) {
+                    System.out.println("no valid sample precision defined (between 0 and 1)/n");
+                    System.exit(1);
+                }
+                samplePrecision = Double.parseDouble(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--serve")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("\\d+")) {
+                    System.out.println("no port to serve on defined/n");
+                    System.exit(1);
+                }
+                servePort = Integer.parseInt(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--serve-threads")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid number of server threads defined/n");
+                    System.exit(1);
+                }
+                serveThreads = Integer.parseInt(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--serve-examples")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d*")) {
+                    System.out.println("no valid number of examples per path defined/n");
+                    System.exit(1);
+                }
+                serveExamples = Integer.parseInt(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--parser")) {
+                if (x + 1 >= args.length || !(args[x + 1].equals("full") || args[x + 1].equals("fast"))) {
+                    System.out.println("no valid parser defined (full or fast)/n");
+                    System.exit(1);
+                }
+                fastParser = "fast".equals(args[x + 1]);
+                x = x + 1;
+            } else if (args[x].equals("--match-cache-size")) {
+                if (x + 1 >= args.length || !args[x + 1].matches("[1-9]\\d{0,8}")) {
+                    System.out.println("no valid match cache size defined (1 to 999999999)/n");
+                    System.exit(1);
+                }
+                matchCacheSize = Integer.parseInt(args[x + 1]);
+                x = x + 1;
             } else {
                 // do nothing and go to the next parameter.
             }
             x = x + 1;
         }
 
+        // The first schema set is the main one, further ones are checked as other versions in the same scan
+        if (!xsdFolders.isEmpty()) {
+            xsdMain = xsdFolders.get(0) + "\\";
+        }
+        if (!xsdMainFileNames.isEmpty()) {
+            xsdMainFileName = xsdMainFileNames.get(0);
+        }
+        if (xsdFolders.size() > 1 || xsdMainFileNames.size() > 1) {
+            if (xsdMainFileNames.size() != 1 && xsdMainFileNames.size() != xsdFolders.size()) {
+                System.out.println("define one --main for all or one per --xsd/n");
+                System.exit(1);
+            }
+            if (!"paths".equals(schemaModelType) || !rootElementNames.isEmpty() || !includedNamespaces.isEmpty() || !"".equals(branchesFilePath) || memoryBudget > 0
+                || "bin".equals(outputFormat) || servePort >= 0) {
+                System.out.println("several schema versions are only supported with --model paths and CSV output, without --memory-budget and --serve/n");
+                System.exit(1);
+            }
+        }
+
+        // Convert a binary coverage file to CSV, nothing else to do then
+        if (!"".equals(convertFilePath)) {
+            if ("".equals(outputFilePath)) {
+                System.out.println("no output file defined/n");
+                System.exit(1);
+            }
+            System.out.println("Converting " + convertFilePath + " to CSV");
+            XMLSchemaCoverageTable.readBinary(XMLSchemaUtils.openFileOrFolder(convertFilePath, null)).writeCsv(outputFilePath);
+            return;
+        }
+
+        // Merge partial coverage files of shards, nothing else to do then
+        if (!mergeFilePaths.isEmpty()) {
+            if ("".equals(outputFilePath)) {
+                System.out.println("no output file defined/n");
+                System.exit(1);
+            }
+            List<XMLSchemaCoverageTable> partialTables = new ArrayList<>();
+            for (String mergeFilePath : mergeFilePaths) {
+                System.out.println("Reading partial coverage " + mergeFilePath);
+                partialTables.add(XMLSchemaCoverageTable.read(XMLSchemaUtils.openFileOrFolder(mergeFilePath, null)));
+            }
+            System.out.println("Writing the merged result to disk");
+            XMLSchemaCoverageTable mergedTable = XMLSchemaCoverageTable.merge(partialTables);
+            if ("bin".equals(outputFormat)) {
+                mergedTable.writeBinary(new File(outputFilePath));
+            } else {
+                mergedTable.writeCsv(outputFilePath);
+            }
+            return;
+        }
+
+        // Compute a small covering set of examples, nothing else to do then
+        if (!"".equals(minimizeFilePath)) {
+            System.out.println("Minimizing the examples of " + minimizeFilePath);
+            XMLSchemaCoverageMinimizer minimizer = XMLSchemaCoverageMinimizer.minimize(XMLSchemaCoverageTable.read(XMLSchemaUtils.openFileOrFolder(minimizeFilePath, null)),
+                minimizeSearchNodes);
+            minimizer.print();
+            if (!"".equals(outputFilePath)) {
+                minimizer.write(outputFilePath);
+            } else {
+                for (String example : minimizer.getCover()) {
+                    System.out.println(example);
+                }
+            }
+            return;
+        }
+
+        // Diff two coverage files, nothing else to do then
+        if (!"".equals(diffOldFilePath)) {
+            System.out.println("Comparing " + diffOldFilePath + " with " + diffNewFilePath);
+            XMLSchemaCoverageDiff diff = XMLSchemaCoverageDiff.diff(XMLSchemaCoverageTable.read(XMLSchemaUtils.openFileOrFolder(diffOldFilePath, null)),
+                XMLSchemaCoverageTable.read(XMLSchemaUtils.openFileOrFolder(diffNewFilePath, null)));
+            diff.print(verbose);
+            if (!"".equals(outputFilePath)) {
+                diff.writeCsv(outputFilePath);
+            }
+            if (!diff.getNewlyUncovered().isEmpty()) {
+                System.exit(2);
+            }
+            return;
+        }
+
         // Load a bitmap of all elements
         if (!"".equals(xsdMain) && !"".equals(xsdMainFileName)) {
             if (checkCircularDependency) {
@@ -128,19 +488,198 @@ public final class XMLSchemaCoverageChecker {
             }
 
             System.out.println("Loading the XSDs into memory.");
-            allPathsBitmap = XMLSchemaBitmapBuilder.loadXsdString(xsdMain, xsdMainFileName, allPathsBitmap); // FIXME: separte handling loadXsd vs loadXsdString
+            // Scoping is done on the schema model, the bitmap always contains the whole closure
+            if (!"dag".equals(schemaModelType) && (!rootElementNames.isEmpty() || !includedNamespaces.isEmpty() || !"".equals(branchesFilePath))) {
+                System.out.println("--root-element, --include-namespace and --branches use the schema model, switching to --model dag.");
+                schemaModelType = "dag";
+            }
+
+            if ("dag".equals(schemaModelType)) {
+                if (!"".equals(xsdCacheFilePath)) {
+                    System.out.println("--xsd-cache only applies to --model paths, the schema model is always built from the xsds.");
+                }
+                schemaModel = XSDSchemaModel.load(xsdMain, xsdMainFileName, lazy, rootElementNames, includedNamespaces);
+                System.out.println("Loaded a schema model of " + schemaModel.getNodeCount() + " nodes.");
+                schemaModelCoverage = new XSDSchemaModelCoverage(schemaModel, countOccurrences ? new XMLSchemaOccurrenceCounter(topK) : null);
+            } else if (!"".equals(xsdCacheFilePath)) {
+                XMLSchemaBuildCache buildCache = XMLSchemaBuildCache.load(xsdCacheFilePath, xsdMain + xsdMainFileName);
+                allPathsBitmap = XMLSchemaBitmapBuilder.loadXsdStringIncremental(xsdMain, xsdMainFileName, allPathsBitmap, buildCache);
+                buildCache.save();
+            } else {
+                allPathsBitmap = XMLSchemaBitmapBuilder.loadXsdString(xsdMain, xsdMainFileName, allPathsBitmap); // FIXME: separte handling loadXsd vs loadXsdString
+            }
+
+            for (int i = 1; i < Math.max(xsdFolders.size(), xsdMainFileNames.size()); i++) {
+                String versionFolder = xsdFolders.get(Math.min(i, xsdFolders.size() - 1));
+                String versionMainFileName = xsdMainFileNames.get(xsdMainFileNames.size() == 1 ? 0 : i);
+                otherVersions.add(XMLSchemaVersionCoverage.load(getVersionName(xsdFolders, xsdMainFileNames, i), versionFolder + "\\", versionMainFileName,
+                    "compiled".equals(matcherType), matchCacheSize, countOccurrences ? topK : 0));
+            }
+        }
+
+        // Collect the coverage of posted documents until the process is stopped, nothing else to do then
+        if (servePort >= 0) {
+            if (schemaModelCoverage != null) {
+                System.out.println("--serve only supports --model paths/n");
+                System.exit(1);
+            }
+            serve(servePort, serveThreads, serveExamples, matcherType, matchCacheSize, outputFilePath);
+            return;
         }
 
         // Go example by example and check the coverage accross the schema.
         if (!"".equals(xmlMain)) {
             System.out.println("Checking the XMLs against the XSDs.");
-            checkXml(xmlMain);
+            if (shardCount > 1) {
+                System.out.println("Checking shard " + shardIndex + "/" + shardCount + " of the examples.");
+            }
+            if (schemaModelCoverage == null) {
+                XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(allPathsBitmap, "/");
+                XMLSchemaCompiledMatcher compiledMatcher = null;
+                if ("compiled".equals(matcherType)) {
+                    long compileStart = System.nanoTime();
+                    compiledMatcher = XMLSchemaCompiledMatcher.compile(pathIndex, "/");
+                    System.out.println("Compiled " + pathIndex.size() + " xsd paths into a matcher of " + compiledMatcher.getStateCount() + " states in "
+                        + (System.nanoTime() - compileStart) / 1000000 + " ms (" + compiledMatcher.getUncompiledCount() + " paths are matched interpreted).");
+                }
+                matchCache = new XMLSchemaPathMatchCache(pathIndex, compiledMatcher, matchCacheSize);
+                if (countOccurrences) {
+                    occurrenceCounter = new XMLSchemaOccurrenceCounter(topK);
+                }
+                if (memoryBudget > 0) {
+                    if ("bin".equals(outputFormat)) {
+                        System.out.println("--memory-budget only supports the CSV output format/n");
+                        System.exit(1);
+                    }
+                    coverageStore = new XMLSchemaCoverageStore(memoryBudget);
+                }
+            } else if ("compiled".equals(matcherType)) {
+                System.out.println("--matcher only applies to --model paths, the schema model is walked along the examples.");
+            }
+            if (schemaModelCoverage != null && fastParser) {
+                System.out.println("--parser fast only applies to --model paths, the schema model needs the parsed examples.");
+                fastParser = false;
+            }
+            if (schemaModelCoverage != null && memoryBudget > 0) {
+                System.out.println("--memory-budget only applies to --model paths, the schema model keeps its coverage in memory.");
+            }
+            // A single file (or stdin) is read as a stream of documents, unless it is an archive
+            File xmlMainFile = "-".equals(xmlMain) ? null : XMLSchemaUtils.openFileOrFolder(xmlMain, null);
+            boolean streamInput = xmlMainFile == null || xmlMainFile.isFile();
+            xmlRootPath = xmlMainFile == null ? "" : xmlMainFile.getCanonicalPath();
+
+            // Draw the sample from the listed example files
+            List<File> sampleOrder = null;
+            if (sampleSize > 0) {
+                if (schemaModelCoverage != null || streamInput || coverageStore != null || "bin".equals(outputFormat) || !otherVersions.isEmpty()) {
+                    System.out.println("--sample only supports an example folder with --model paths, one schema version and CSV output without --memory-budget/n");
+                    System.exit(1);
+                }
+                List<File> xmlFiles = new ArrayList<>();
+                listXml(xmlMain, xmlFiles);
+                sampleOrder = XMLSchemaSampler.order(xmlFiles, sampleSeed, sampleStratify);
+                sampler = new XMLSchemaSampler(matchCache.getPathIndex().size(), xmlFiles.size());
+                System.out.println("Sampling up to " + Math.min(sampleSize, xmlFiles.size()) + " of " + xmlFiles.size() + " example files (seed " + sampleSeed
+                    + (sampleStratify ? ", stratified by folder" : "") + ").");
+            }
+
+            XMLSchemaProgressReporter progressReporter = null;
+            if (progress) {
+                // The examples are listed up front for the ETA, this is cheap compared to parsing them
+                long[] filesAndBytes = new long[3];
+                if (streamInput) {
+                    // The number of documents in a stream is unknown, so is the size of stdin
+                    filesAndBytes[1] = xmlMainFile == null ? 0 : xmlMainFile.length();
+                    filesAndBytes[2] = 1;
+                } else if (sampleOrder != null) {
+                    for (File xmlFile : sampleOrder.subList(0, (int) Math.min(sampleSize, sampleOrder.size()))) {
+                        filesAndBytes[0]++;
+                        filesAndBytes[1] += xmlFile.length();
+                    }
+                } else {
+                    countXml(xmlMain, filesAndBytes);
+                }
+                boolean interactive = System.console() != null;
+                progressReporter = new XMLSchemaProgressReporter(filesAndBytes[2] > 0 ? 0 : filesAndBytes[0], filesAndBytes[1], 1000 * (progressInterval > 0 ? progressInterval : interactive ? 1 : 30), interactive);
+                progressReporter.start();
+            }
+            if (xmlMainFile != null && xmlMainFile.isFile() && XMLSchemaArchiveReader.isArchive(xmlMainFile)) {
+                checkArchive(xmlMainFile);
+            } else if (streamInput) {
+                checkStream(xmlMain);
+            } else if (sampleOrder != null) {
+                checkSample(sampleOrder, sampleSize, samplePrecision);
+            } else {
+                checkXml(xmlMain);
+            }
+            if (progressReporter != null) {
+                progressReporter.stop();
+            }
         }
 
         // Print the results
         if (!"".equals(outputFilePath)) {
             System.out.println("Writing the result to disk");
-            XMLSchemaUtils.printBitmapToCsv(outputFilePath, allPathsBitmap);
+            XMLSchemaPathIndex occurrencePathIndex = matchCache == null ? null : matchCache.getPathIndex();
+            if (schemaModelCoverage != null) {
+                // The flat paths of the schema model are only produced now
+                allPathsBitmap = schemaModelCoverage.toBitmap(xsdMain + xsdMainFileName);
+                if (countOccurrences) {
+                    occurrencePathIndex = XMLSchemaPathIndex.build(allPathsBitmap, "/");
+                    occurrenceCounter = schemaModelCoverage.toPathOccurrences(occurrencePathIndex, xsdMain + xsdMainFileName, topK);
+                }
+                if (lazy) {
+                    System.out.println("The schema model has " + schemaModel.getNodeCount() + " nodes, " + schemaModel.getUnexpandedTypeCount()
+                        + " types were never reached by the examples and are reported by their uncovered elements only.");
+                }
+            }
+            if ("bin".equals(outputFormat)) {
+                if (occurrenceCounter != null) {
+                    System.out.println("Occurrences are only written to CSV, the binary format keeps the covering examples only.");
+                }
+                XMLSchemaCoverageTable.fromBitmap(allPathsBitmap).writeBinary(new File(outputFilePath));
+            } else if (coverageStore != null) {
+                System.out.println("Merging " + coverageStore.getRunCount() + " spilled coverage runs.");
+                XMLSchemaUtils.printCoverageStoreToCsv(outputFilePath, allPathsBitmap, occurrencePathIndex, coverageStore, occurrenceCounter);
+            } else if (!otherVersions.isEmpty()) {
+                // One CSV per schema version, named after the version
+                System.out.println(getVersionName(xsdFolders, xsdMainFileNames, 0) + ": covered " + matchCache.getPathIndex().getCoveredCount() + " of " + matchCache.getPathIndex().size()
+                    + " paths.");
+                XMLSchemaUtils.printBitmapToCsv(getVersionOutputFilePath(outputFilePath, getVersionName(xsdFolders, xsdMainFileNames, 0)), allPathsBitmap, occurrencePathIndex,
+                    occurrenceCounter);
+                for (XMLSchemaVersionCoverage version : otherVersions) {
+                    System.out.println(version.getName() + ": covered " + version.getCoveredPaths() + " of " + version.getPathCount() + " paths.");
+                    version.printToCsv(getVersionOutputFilePath(outputFilePath, version.getName()));
+                }
+            } else if (sampler != null) {
+                XMLSchemaUtils.printBitmapToCsv(outputFilePath, allPathsBitmap, matchCache.getPathIndex(), occurrenceCounter, sampler);
+            } else {
+                XMLSchemaUtils.printBitmapToCsv(outputFilePath, allPathsBitmap, occurrencePathIndex, occurrenceCounter);
+            }
+        }
+
+        // Print the branch coverage, it needs the particle structure of the schema model
+        if (!"".equals(branchesFilePath) && schemaModelCoverage != null) {
+            Map<String, Map<String, Set<String>>> branchCoverage = schemaModelCoverage.toBranchCoverage();
+            int branches = 0;
+            int coveredBranches = 0;
+            for (Map<String, Set<String>> elementBranches : branchCoverage.values()) {
+                for (Set<String> coveringExamples : elementBranches.values()) {
+                    branches++;
+                    coveredBranches += coveringExamples.isEmpty() ? 0 : 1;
+                }
+            }
+            System.out.println("Branch coverage: " + coveredBranches + " of " + branches + " choice alternatives and optional particles exercised.");
+            XMLSchemaUtils.printBranchesToCsv(branchesFilePath, xsdMain + xsdMainFileName, branchCoverage);
+        }
+
+        if (coverageStore != null) {
+            coverageStore.close();
+        }
+
+        // Print the metrics of the example scan
+        if (!"".equals(xmlMain)) {
+            XMLSchemaRunMetrics.print(matchCache);
         }
 
         // Print which files were ignored
@@ -149,6 +688,39 @@ public final class XMLSchemaCoverageChecker {
         }
     }
 
+    /**
+     * Starts a {@link XMLSchemaCoverageServer} on the loaded bitmap. The server runs until the process is stopped, then the collected coverage is written to the output file, if any.
+     *
+     * @param port the localhost port to listen on
+     * @param threads the number of threads checking documents
+     * @param examplesPerPath the number of covering examples kept per path
+     * @param matcherType interpreted or compiled
+     * @param matchCacheSize the capacity of the match cache
+     * @param outputFilePath the CSV file to write on shutdown, empty for none
+     * @throws IOException if the port cannot be bound
+     */
+    private static void serve(int port, int threads, int examplesPerPath, String matcherType, int matchCacheSize, String outputFilePath) throws IOException {
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(allPathsBitmap, "/");
+        XMLSchemaCompiledMatcher compiledMatcher = "compiled".equals(matcherType) ? XMLSchemaCompiledMatcher.compile(pathIndex, "/") : null;
+        matchCache = new XMLSchemaPathMatchCache(pathIndex, compiledMatcher, matchCacheSize);
+
+        XMLSchemaCoverageServer server = new XMLSchemaCoverageServer(port, threads, allPathsBitmap, matchCache,
+            new XMLSchemaLiveCoverage(pathIndex, XMLSchemaLiveCoverage.DEFAULT_STRIPES, examplesPerPath));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (!"".equals(outputFilePath)) {
+                System.out.println("Writing the result to disk");
+                try {
+                    XMLSchemaUtils.printBitmapToCsv(outputFilePath, server.snapshot(), null, null);
+                } catch (IOException e) {
+                    System.out.println("XMLSchemaCoverageChecker: " + "could not write " + outputFilePath + ": " + e.getMessage());
+                }
+            }
+            XMLSchemaRunMetrics.print(matchCache);
+        }));
+        server.start();
+    }
+
     /**
      * A recursive method to traverse the examples and to add each example to the bitmap that utilized a specific XML element.
      *
@@ -161,20 +733,16 @@ public final class XMLSchemaCoverageChecker {
 
         for (File fileOrFolder : xmlFolder.listFiles()) {
             if (fileOrFolder.isFile() && "xml".equals(FilenameUtils.getExtension(fileOrFolder.getCanonicalPath()))) {
-                // If it's a file let's check it
-                if (verbose) {
-                    System.out.println("Checking file: " + fileOrFolder.getCanonicalPath());
+                // If the file belongs to another shard another process checks it
+                if (shardCount > 1 && !XMLSchemaUtils.isInShard(xmlRootPath, fileOrFolder.getCanonicalPath(), shardIndex, shardCount)) {
+                    continue;
                 }
 
-                // Alot of code for getting the xml DOM
-                Parameters params = new Parameters();
-                FileBasedConfigurationBuilder<XMLConfiguration> builder =
-                    new FileBasedConfigurationBuilder<XMLConfiguration>(XMLConfiguration.class)
-                        .configure(params.xml().setFile(fileOrFolder));
-                XMLConfiguration config = builder.getConfiguration();
-
-                // Now, we get the actual content and check it
-                checkElement(fileOrFolder, config.getNodeModel().getRootNode(), "");
+                // If it's a file let's check it
+                checkXmlFile(fileOrFolder);
+            } else if (fileOrFolder.isFile() && XMLSchemaArchiveReader.isArchive(fileOrFolder)) {
+                // If it's an archive let's check its xml entries
+                checkArchive(fileOrFolder);
             } else if (fileOrFolder.isDirectory()) {
                 // If it's a folder let's recurse
                 checkXml(fileOrFolder.getCanonicalPath());
@@ -185,31 +753,377 @@ public final class XMLSchemaCoverageChecker {
     }
 
     /**
-     * This method recursively checks any xml object and all its sub-objects for their match with our bitmap.
+     * Checks a single example file.
+     *
+     * @param xmlFile the xml file to check
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    private static void checkXmlFile(File xmlFile) throws IOException, ConfigurationException {
+        if (verbose) {
+            System.out.println("Checking file: " + xmlFile.getCanonicalPath());
+        }
+
+        // Trusted examples are tokenized if possible
+        if (fastParser) {
+            byte[] document = Files.readAllBytes(xmlFile.toPath());
+            if (checkDocumentFast(xmlFile.getCanonicalPath(), document, document.length)) {
+                XMLSchemaRunMetrics.bytesScanned.addAndGet(document.length);
+                return;
+            }
+        }
+
+        // Alot of code for getting the xml DOM
+        long parseStart = System.nanoTime();
+        Parameters params = new Parameters();
+        FileBasedConfigurationBuilder<XMLConfiguration> builder =
+            new FileBasedConfigurationBuilder<XMLConfiguration>(XMLConfiguration.class)
+                .configure(params.xml().setFile(xmlFile));
+        XMLConfiguration config = builder.getConfiguration();
+        XMLSchemaRunMetrics.parseNanos.addAndGet(System.nanoTime() - parseStart);
+
+        checkDocument(xmlFile.getCanonicalPath(), config);
+        XMLSchemaRunMetrics.bytesScanned.addAndGet(xmlFile.length());
+    }
+
+    /**
+     * Checks the files of a sample in the given order until the sample size is reached or, every {@link XMLSchemaSampler#MIN_SAMPLE_SIZE} files, the usage estimates of all paths are
+     * within the precision.
+     *
+     * @param orderedFiles all example files in the random order of the sample
+     * @param sampleSize the maximum number of files to check
+     * @param precision the wanted half width of the 95% intervals, 0 to check all files of the sample
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    private static void checkSample(List<File> orderedFiles, long sampleSize, double precision) throws IOException, ConfigurationException {
+        for (File xmlFile : orderedFiles) {
+            if (sampler.getSampleSize() >= sampleSize) {
+                break;
+            }
+            checkXmlFile(xmlFile);
+            if (sampler.getSampleSize() % XMLSchemaSampler.MIN_SAMPLE_SIZE == 0 && sampler.isConverged(precision)) {
+                System.out.println("Stopping the sample early, the usage estimates of all paths are within +/-" + precision + ".");
+                break;
+            }
+        }
+        System.out.println("Sampled " + sampler.getSampleSize() + " of " + sampler.getPopulationSize() + " example files, the widest 95% interval is +/-"
+            + String.format(Locale.ROOT, "%.4f", sampler.getMaxHalfWidth()) + ".");
+    }
+
+    /**
+     * A recursive method to list the example files (of this shard) to draw a sample from, archives are not sampled.
+     *
+     * @param folderName the folder containing the xml files
+     * @param xmlFiles the files found so far
+     * @throws IOException
+     */
+    private static void listXml(String folderName, List<File> xmlFiles) throws IOException {
+        File xmlFolder = XMLSchemaUtils.openFileOrFolder(folderName, null);
+
+        for (File fileOrFolder : xmlFolder.listFiles()) {
+            if (fileOrFolder.isFile() && "xml".equals(FilenameUtils.getExtension(fileOrFolder.getCanonicalPath()))) {
+                if (shardCount == 1 || XMLSchemaUtils.isInShard(xmlRootPath, fileOrFolder.getCanonicalPath(), shardIndex, shardCount)) {
+                    xmlFiles.add(fileOrFolder);
+                }
+            } else if (fileOrFolder.isDirectory()) {
+                listXml(fileOrFolder.getCanonicalPath(), xmlFiles);
+            } else {
+                ignoredFiles.add(fileOrFolder.getCanonicalPath());
+            }
+        }
+    }
+
+    /**
+     * Checks the xml entries of a zip or tar(.gz) archive. The archive is read in one sequential pass and the entries are parsed directly from the archive stream, nothing is extracted to disk.
+     * The entries are reported as archive!/entry.
+     *
+     * @param archive the archive file
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    private static void checkArchive(File archive) throws IOException, ConfigurationException {
+        if (verbose) {
+            System.out.println("Checking archive: " + archive.getCanonicalPath());
+        }
+
+        XMLSchemaArchiveReader.forEachXmlEntry(archive, (entryPath, entryStream) -> {
+            // Entries of other shards are skipped without parsing them
+            if (shardCount > 1 && !XMLSchemaUtils.isInShard(xmlRootPath, entryPath, shardIndex, shardCount)) {
+                return;
+            }
+
+            if (verbose) {
+                System.out.println("Checking entry: " + entryPath);
+            }
+
+            XMLConfiguration config = new XMLConfiguration();
+            if (fastParser) {
+                byte[] document = IOUtils.toByteArray(entryStream);
+                if (checkDocumentFast(entryPath, document, document.length)) {
+                    return;
+                }
+                long parseStart = System.nanoTime();
+                new FileHandler(config).load(new ByteArrayInputStream(document));
+                XMLSchemaRunMetrics.parseNanos.addAndGet(System.nanoTime() - parseStart);
+            } else {
+                long parseStart = System.nanoTime();
+                new FileHandler(config).load(entryStream);
+                XMLSchemaRunMetrics.parseNanos.addAndGet(System.nanoTime() - parseStart);
+            }
+            checkDocument(entryPath, config);
+        });
+    }
+
+    /**
+     * Checks a stream of concatenated or newline delimited xml documents, e.g. captured production traffic. The documents are split off the stream one by one (see
+     * {@link XMLSchemaDocumentStreamReader}) and reported as stream#n, where stream is stdin or the canonical path of the file. Malformed documents are skipped.
+     *
+     * @param streamPath the file to read or - for stdin
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    private static void checkStream(String streamPath) throws IOException, ConfigurationException {
+        String streamName = "-".equals(streamPath) ? "stdin" : XMLSchemaUtils.openFileOrFolder(streamPath, null).getCanonicalPath();
+        AtomicLong malformedDocuments = new AtomicLong();
+
+        InputStream in = "-".equals(streamPath) ? System.in : new FileInputStream(XMLSchemaUtils.openFileOrFolder(streamPath, null));
+        try {
+            long documents = XMLSchemaDocumentStreamReader.forEachDocument(in, streamName, (documentId, document) -> {
+                // Documents of other shards are skipped without parsing them
+                if (shardCount > 1 && !XMLSchemaUtils.isInShard(xmlRootPath, documentId, shardIndex, shardCount)) {
+                    return;
+                }
+
+                if (verbose) {
+                    System.out.println("Checking document: " + documentId);
+                }
+
+                if (fastParser) {
+                    byte[] documentBytes = document.getBytes(StandardCharsets.UTF_8);
+                    if (checkDocumentFast(documentId, documentBytes, documentBytes.length)) {
+                        return;
+                    }
+                }
+
+                XMLConfiguration config = new XMLConfiguration();
+                long parseStart = System.nanoTime();
+                try {
+                    new FileHandler(config).load(new StringReader(document));
+                    XMLSchemaRunMetrics.parseNanos.addAndGet(System.nanoTime() - parseStart);
+                } catch (ConfigurationException e) {
+                    System.out.println("Skipping the malformed document " + documentId + ": " + e.getMessage());
+                    malformedDocuments.incrementAndGet();
+                    return;
+                }
+                checkDocument(documentId, config);
+            });
+            System.out.println("Read " + documents + " documents from " + streamName + ", " + malformedDocuments.get() + " malformed documents were skipped.");
+        } finally {
+            if (in != System.in) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Checks a parsed example document against the schema model or the bitmap.
+     *
+     * @param canonicalPath the path the example is reported with
+     * @param config the parsed example
+     * @throws IOException
+     */
+    private static void checkDocument(String canonicalPath, XMLConfiguration config) throws IOException {
+        // With the schema model we walk the document along the model
+        if (schemaModelCoverage != null) {
+            long matchStart = System.nanoTime();
+            schemaModelCoverage.checkDocument(canonicalPath, config.getNodeModel().getRootNode());
+            XMLSchemaRunMetrics.matchNanos.addAndGet(System.nanoTime() - matchStart);
+            XMLSchemaRunMetrics.filesScanned.incrementAndGet();
+            return;
+        }
+
+        // Now, we get the actual content and collect its distinct node paths first, repetitive documents (e.g. thousands of TripResults)
+        // then only need one match per distinct path, the number of nodes per path is kept for the occurrence counts
+        Map<String, Integer> nodePaths = new HashMap<>();
+        checkElement(config.getNodeModel().getRootNode(), "", nodePaths);
+        matchNodePaths(canonicalPath, nodePaths);
+    }
+
+    /**
+     * Checks an example with the tag tokenizer (--parser fast) instead of the parser, see {@link XMLSchemaTagTokenizer}.
+     *
+     * @param canonicalPath the path the example is reported with
+     * @param document the bytes of the example
+     * @param length the number of bytes of the example
+     * @return false if the example could not be tokenized and has to be parsed
+     * @throws IOException
+     */
+    private static boolean checkDocumentFast(String canonicalPath, byte[] document, int length) throws IOException {
+        long parseStart = System.nanoTime();
+        Map<String, Integer> nodePaths = new HashMap<>();
+        long nodes = XMLSchemaTagTokenizer.collectNodePaths(document, length, nodePaths);
+        XMLSchemaRunMetrics.parseNanos.addAndGet(System.nanoTime() - parseStart);
+        if (nodes < 0) {
+            if (verbose) {
+                System.out.println("Parsing " + canonicalPath + ", it cannot be tokenized.");
+            }
+            XMLSchemaRunMetrics.tokenizerFallbacks.incrementAndGet();
+            return false;
+        }
+
+        XMLSchemaRunMetrics.tokenizedFiles.incrementAndGet();
+        XMLSchemaRunMetrics.nodesScanned.addAndGet(nodes);
+        matchNodePaths(canonicalPath, nodePaths);
+        return true;
+    }
+
+    /**
+     * Matches the distinct node paths of an example against the bitmap (and the other schema versions).
+     *
+     * @param canonicalPath the path the example is reported with
+     * @param nodePaths the distinct node paths of the example with their number of nodes
+     * @throws IOException
+     */
+    private static void matchNodePaths(String canonicalPath, Map<String, Integer> nodePaths) throws IOException {
+        long matchStart = System.nanoTime();
+        // Several node paths may match the same xsd path, their occurrences are summed and added once per path, thus, the file competes for the top-K with its total
+        Map<Integer, Long> pathOccurrences = occurrenceCounter == null ? null : new HashMap<>();
+        // A sampled file counts once for every path it uses
+        Set<Integer> matchedPathIds = sampler == null ? null : new HashSet<>();
+        for (Entry<String, Integer> nodePath : nodePaths.entrySet()) {
+            matchNodePath(canonicalPath, nodePath.getKey(), nodePath.getValue(), pathOccurrences, matchedPathIds);
+        }
+        if (pathOccurrences != null) {
+            int fileId = occurrenceCounter.getFileId(canonicalPath);
+            for (Entry<Integer, Long> pathOccurrence : pathOccurrences.entrySet()) {
+                occurrenceCounter.add(pathOccurrence.getKey(), fileId, pathOccurrence.getValue());
+            }
+        }
+        if (matchedPathIds != null) {
+            sampler.addFile(matchedPathIds.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        // The other schema versions reuse the node paths of the single parse
+        for (XMLSchemaVersionCoverage version : otherVersions) {
+            version.match(canonicalPath, nodePaths);
+        }
+        XMLSchemaRunMetrics.matchNanos.addAndGet(System.nanoTime() - matchStart);
+        XMLSchemaRunMetrics.distinctPathsMatched.addAndGet(nodePaths.size());
+        XMLSchemaRunMetrics.filesScanned.incrementAndGet();
+    }
+
+    /**
+     * Names a schema version after the last segment of its xsd folder, or its main xsd if all versions share the folder. If the names are not unique the versions are numbered from 1.
+     *
+     * @param xsdFolders the xsd folders of the versions
+     * @param xsdMainFileNames the main xsd files of the versions, one for all or one per folder
+     * @param version the index of the version
+     * @return the name of the version
+     */
+    private static String getVersionName(List<String> xsdFolders, List<String> xsdMainFileNames, int version) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < Math.max(xsdFolders.size(), xsdMainFileNames.size()); i++) {
+            String folder = xsdFolders.get(Math.min(i, xsdFolders.size() - 1)).replaceAll("[/\\\\]+$", "");
+            names.add(xsdFolders.size() > 1 ? folder.substring(Math.max(folder.lastIndexOf('/'), folder.lastIndexOf('\\')) + 1)
+                : FilenameUtils.getBaseName(xsdMainFileNames.get(i)));
+        }
+        return new HashSet<>(names).size() == names.size() ? names.get(version) : "v" + (version + 1);
+    }
+
+    /**
+     * @param outputFilePath the output file given by --out, e.g. coverage.csv
+     * @param versionName the name of the schema version
+     * @return the output file of the version, e.g. coverage.OJP-2.0.csv
+     */
+    private static String getVersionOutputFilePath(String outputFilePath, String versionName) {
+        String extension = FilenameUtils.getExtension(outputFilePath);
+        return FilenameUtils.removeExtension(outputFilePath) + "." + versionName + ("".equals(extension) ? "" : "." + extension);
+    }
+
+    /**
+     * A recursive method to count the example files (of this shard) checkXml will scan and their size.
+     *
+     * @param folderName the folder containing the xml files to check
+     * @param filesAndBytes the number of files and bytes found so far, and 1 if archives were found (the number of files is unknown then)
+     * @throws IOException
+     */
+    private static void countXml(String folderName, long[] filesAndBytes) throws IOException {
+        File xmlFolder = XMLSchemaUtils.openFileOrFolder(folderName, null);
+
+        for (File fileOrFolder : xmlFolder.listFiles()) {
+            if (fileOrFolder.isFile() && "xml".equals(FilenameUtils.getExtension(fileOrFolder.getCanonicalPath()))) {
+                if (shardCount == 1 || XMLSchemaUtils.isInShard(xmlRootPath, fileOrFolder.getCanonicalPath(), shardIndex, shardCount)) {
+                    filesAndBytes[0]++;
+                    filesAndBytes[1] += fileOrFolder.length();
+                }
+            } else if (fileOrFolder.isFile() && XMLSchemaArchiveReader.isArchive(fileOrFolder)) {
+                // The entries of an archive are only known once it is read, its (compressed) size counts for the ETA
+                filesAndBytes[1] += fileOrFolder.length();
+                filesAndBytes[2] = 1;
+            } else if (fileOrFolder.isDirectory()) {
+                countXml(fileOrFolder.getCanonicalPath(), filesAndBytes);
+            }
+        }
+    }
+
+    /**
+     * This method recursively collects the paths of any xml object, its attributes and all its sub-objects, so that they can be matched with our bitmap.
      *
-     * @param file the example file we're checking, this is mainly needed to reference the xml that covered the given xsd
-     * @param rootNode the node to check for existence against the xsd schema
+     * @param rootNode the node to collect the path for
+     * @param path the path leading to the node
+     * @param nodePaths the distinct node paths of the example file with their number of nodes
      */
-    private static void checkElement(File file, ImmutableNode rootNode, String path) throws IOException {
-        // Take the current root node and check it
+    static void checkElement(ImmutableNode rootNode, String path, Map<String, Integer> nodePaths) {
+        // Take the current root node and remember its path
         String rootNodeNodeName = rootNode.getNodeName();
         rootNodeNodeName = rootNodeNodeName.substring(rootNodeNodeName.lastIndexOf(":") + 1);
         String rootNodePath = path + "/" + rootNodeNodeName;
 
-        for (Entry<String, Map<String, Set<String>>> filePathToStructure : allPathsBitmap.entrySet()) {
-            if (filePathToStructure.getValue() != null) {
-                for (Entry<String, Set<String>> structurePathToOccurence : filePathToStructure.getValue().entrySet()) {
-                    String structurePath = structurePathToOccurence.getKey().substring(structurePathToOccurence.getKey().lastIndexOf(":") + 1);
-                    if (XMLSchemaUtils.fullSubpath(rootNodePath, structurePath, "/")) {
-                        structurePathToOccurence.getValue().add(file.getCanonicalPath());
-                    }
-                }
+        nodePaths.merge(rootNodePath, 1, Integer::sum);
+        XMLSchemaRunMetrics.nodesScanned.incrementAndGet();
+
+        // The attributes are collected in the same walk, as /element/@attribute paths
+        for (String attributeName : rootNode.getAttributes().keySet()) {
+            if (!XMLSchemaUtils.isNamespaceAttribute(attributeName)) {
+                nodePaths.merge(rootNodePath + "/" + XMLSchemaBitmapBuilder.attributePrefix + attributeName.substring(attributeName.lastIndexOf(":") + 1), 1, Integer::sum);
+                XMLSchemaRunMetrics.nodesScanned.incrementAndGet();
             }
         }
 
         // Then dip into the child elements
         for (ImmutableNode childNode : rootNode.getChildren()) {
-            checkElement(file, childNode, rootNodePath);
+            checkElement(childNode, rootNodePath, nodePaths);
+        }
+    }
+
+    /**
+     * This method checks a single distinct node path of an example for its match with our bitmap.
+     *
+     * @param canonicalPath the canonical path of the example file we're checking, this is mainly needed to reference the xml that covered the given xsd
+     * @param nodePath the path of the node to check for existence against the xsd schema, the matching xsd paths are taken from the shared match cache
+     * @param occurrences the number of nodes with this path in the example
+     * @param pathOccurrences receives the occurrences per matched xsd path id, null if occurrences are not counted
+     * @param matchedPathIds receives the matched xsd path ids, null if they are not needed
+     * @throws IOException if the coverage store cannot spill to disk
+     */
+    private static void matchNodePath(String canonicalPath, String nodePath, int occurrences, Map<Integer, Long> pathOccurrences, Set<Integer> matchedPathIds) throws IOException {
+        XMLSchemaPathIndex pathIndex = matchCache.getPathIndex();
+        int storeFileId = coverageStore == null ? -1 : coverageStore.getFileId(canonicalPath);
+
+        for (int xsdPathId : matchCache.match(nodePath)) {
+            if (coverageStore != null) {
+                coverageStore.add(xsdPathId, storeFileId);
+            } else {
+                pathIndex.getCoverage(xsdPathId).add(canonicalPath);
+            }
+            // Only nodes of the path count as its occurrences, not their descendants
+            if (pathOccurrences != null && pathIndex.endsWith(xsdPathId, nodePath)) {
+                pathOccurrences.merge(xsdPathId, (long) occurrences, Long::sum);
+            }
+            if (matchedPathIds != null) {
+                matchedPathIds.add(xsdPathId);
+            }
         }
     }
 }
@@ -0,0 +1,177 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Compares two coverage results (CSV or binary, see {@link XMLSchemaCoverageTable}) of successive schema and/or example versions.
+ * <p>
+ * The rows of both results are keyed by the xsd file name (without its folder, as versions usually live in different folders) and the xsd path. Both key arrays are sorted once and then walked
+ * in a single linear merge, which reports:
+ * <li>
+ * <i>newly uncovered paths: covered before, but not anymore</i>
+ * <i>newly covered paths: not covered before, but now</i>
+ * <i>removed paths: only in the old result</i>
+ * <i>added paths: only in the new result</i>
+ * </li>
+ */
+public final class XMLSchemaCoverageDiff {
+
+    private final List<String> newlyUncovered = new ArrayList<>();
+    private final List<String> newlyCovered = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private final List<String> added = new ArrayList<>();
+
+    private XMLSchemaCoverageDiff() {
+    }
+
+    /**
+     * Diffs the two coverage results.
+     *
+     * @param oldTable the coverage of the previous run
+     * @param newTable the coverage of the current run
+     * @return the diff
+     */
+    public static XMLSchemaCoverageDiff diff(XMLSchemaCoverageTable oldTable, XMLSchemaCoverageTable newTable) {
+        XMLSchemaCoverageDiff diff = new XMLSchemaCoverageDiff();
+
+        String[] oldKeys = keys(oldTable);
+        String[] newKeys = keys(newTable);
+        Integer[] oldRows = sortedRows(oldKeys);
+        Integer[] newRows = sortedRows(newKeys);
+
+        int o = 0;
+        int n = 0;
+        while (o < oldRows.length || n < newRows.length) {
+            // Rows of files without xsd objects have no key
+            if (o < oldRows.length && oldKeys[oldRows[o]] == null) {
+                o++;
+                continue;
+            }
+            if (n < newRows.length && newKeys[newRows[n]] == null) {
+                n++;
+                continue;
+            }
+
+            int comparison;
+            if (o >= oldRows.length) {
+                comparison = 1;
+            } else if (n >= newRows.length) {
+                comparison = -1;
+            } else {
+                comparison = oldKeys[oldRows[o]].compareTo(newKeys[newRows[n]]);
+            }
+
+            if (comparison < 0) {
+                diff.removed.add(oldKeys[oldRows[o++]]);
+            } else if (comparison > 0) {
+                diff.added.add(newKeys[newRows[n++]]);
+            } else {
+                boolean oldCovered = !oldTable.getCoverage(oldRows[o]).isEmpty();
+                boolean newCovered = !newTable.getCoverage(newRows[n]).isEmpty();
+                if (oldCovered && !newCovered) {
+                    diff.newlyUncovered.add(newKeys[newRows[n]]);
+                } else if (!oldCovered && newCovered) {
+                    diff.newlyCovered.add(newKeys[newRows[n]]);
+                }
+                o++;
+                n++;
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Prints a summary (and in verbose mode all changed paths) to standard output.
+     *
+     * @param verbose whether to list the changed paths
+     */
+    public void print(boolean verbose) {
+        System.out.println("Newly uncovered paths: " + newlyUncovered.size());
+        System.out.println("Newly covered paths: " + newlyCovered.size());
+        System.out.println("Removed paths: " + removed.size());
+        System.out.println("Added paths: " + added.size());
+
+        // The regressions are always listed
+        for (String key : newlyUncovered) {
+            System.out.println("  newly uncovered: " + key);
+        }
+        if (verbose) {
+            for (String key : newlyCovered) {
+                System.out.println("  newly covered: " + key);
+            }
+            for (String key : removed) {
+                System.out.println("  removed: " + key);
+            }
+            for (String key : added) {
+                System.out.println("  added: " + key);
+            }
+        }
+    }
+
+    /**
+     * Writes the diff to the given path: col1: change, col2: xsd file name, col3: xsd path
+     *
+     * @param outputFilePath the path to the output file
+     * @return the written file
+     * @throws IOException
+     */
+    public File writeCsv(String outputFilePath) throws IOException {
+        try (BufferedWriter csvFileWriter = new BufferedWriter(new FileWriter(outputFilePath))) {
+            csvFileWriter.append("Change;File;Pseudo_path\n");
+            writeRows(csvFileWriter, "newly_uncovered", newlyUncovered);
+            writeRows(csvFileWriter, "newly_covered", newlyCovered);
+            writeRows(csvFileWriter, "removed", removed);
+            writeRows(csvFileWriter, "added", added);
+        }
+
+        return new File(outputFilePath);
+    }
+
+    public List<String> getNewlyUncovered() {
+        return newlyUncovered;
+    }
+
+    public List<String> getNewlyCovered() {
+        return newlyCovered;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    private static void writeRows(BufferedWriter csvFileWriter, String change, List<String> keys) throws IOException {
+        for (String key : keys) {
+            csvFileWriter.append(change).append(File.pathSeparator).append(key).append(System.lineSeparator());
+        }
+    }
+
+    private static String[] keys(XMLSchemaCoverageTable table) {
+        String[] keys = new String[table.getRowCount()];
+        for (int row = 0; row < keys.length; row++) {
+            if (table.getXsdPath(row) != null) {
+                keys[row] = FilenameUtils.getName(table.getXsdFile(row)) + File.pathSeparator + table.getXsdPath(row);
+            }
+        }
+        return keys;
+    }
+
+    private static Integer[] sortedRows(String[] keys) {
+        Integer[] rows = new Integer[keys.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        Arrays.sort(rows, Comparator.comparing((Integer row) -> keys[row], Comparator.nullsFirst(Comparator.naturalOrder())));
+        return rows;
+    }
+}
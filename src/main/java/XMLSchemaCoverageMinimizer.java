@@ -0,0 +1,222 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Computes a small set of example files that covers every path covered by all examples, e.g., to shrink a regression fixture suite.
+ * <p>
+ * This is a set cover problem. The bitsets of the {@link XMLSchemaCoverageTable} (per path the covering examples) are transposed into the covered rows per example, then a greedy cover picks the
+ * example covering the most uncovered rows until all are covered. The gains are evaluated lazily: a gain can only shrink, thus, an example is only re-evaluated when it reaches the head of the
+ * queue. Optionally a branch and bound search, bounded by a number of search nodes, tries to find a smaller cover than the greedy one.
+ */
+public final class XMLSchemaCoverageMinimizer {
+
+    private final XMLSchemaCoverageTable table;
+
+    // The rows covered by at least one example, these must be covered
+    private final BitSet coveredRows = new BitSet();
+
+    // example -> rows covered by the example
+    private final int[][] exampleRows;
+
+    private List<Integer> cover;
+
+    private boolean exact = false;
+
+    private long searchNodes = 0;
+
+    private XMLSchemaCoverageMinimizer(XMLSchemaCoverageTable table) {
+        this.table = table;
+
+        int[] rowCounts = new int[table.getExampleCount()];
+        for (int row = 0; row < table.getRowCount(); row++) {
+            BitSet coverage = table.getCoverage(row);
+            for (int example = coverage.nextSetBit(0); example >= 0; example = coverage.nextSetBit(example + 1)) {
+                rowCounts[example]++;
+                coveredRows.set(row);
+            }
+        }
+
+        exampleRows = new int[table.getExampleCount()][];
+        for (int example = 0; example < exampleRows.length; example++) {
+            exampleRows[example] = new int[rowCounts[example]];
+            rowCounts[example] = 0;
+        }
+        for (int row = 0; row < table.getRowCount(); row++) {
+            BitSet coverage = table.getCoverage(row);
+            for (int example = coverage.nextSetBit(0); example >= 0; example = coverage.nextSetBit(example + 1)) {
+                exampleRows[example][rowCounts[example]++] = row;
+            }
+        }
+    }
+
+    /**
+     * Computes a covering set of examples.
+     *
+     * @param table the coverage
+     * @param exactSearchNodes the maximum number of branch and bound nodes to search for a smaller cover than the greedy one, 0 for the greedy cover only
+     * @return the minimizer holding the cover
+     */
+    public static XMLSchemaCoverageMinimizer minimize(XMLSchemaCoverageTable table, long exactSearchNodes) {
+        XMLSchemaCoverageMinimizer minimizer = new XMLSchemaCoverageMinimizer(table);
+        minimizer.cover = minimizer.greedyCover();
+        if (exactSearchNodes > 0) {
+            minimizer.searchCover(exactSearchNodes);
+        }
+        return minimizer;
+    }
+
+    private List<Integer> greedyCover() {
+        BitSet uncovered = (BitSet) coveredRows.clone();
+        List<Integer> greedy = new ArrayList<>();
+
+        // Entries are {gain, example}, the gain may be outdated (too high)
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Integer.compare(b[0], a[0]) : Integer.compare(a[1], b[1]));
+        for (int example = 0; example < exampleRows.length; example++) {
+            if (exampleRows[example].length > 0) {
+                queue.add(new int[] {exampleRows[example].length, example});
+            }
+        }
+
+        while (!uncovered.isEmpty() && !queue.isEmpty()) {
+            int[] head = queue.poll();
+            int gain = gain(head[1], uncovered);
+            if (gain == 0) {
+                continue;
+            }
+            // Still the best, as all other gains are at most their queued value
+            if (queue.isEmpty() || gain >= queue.peek()[0]) {
+                greedy.add(head[1]);
+                for (int row : exampleRows[head[1]]) {
+                    uncovered.clear(row);
+                }
+            } else {
+                queue.add(new int[] {gain, head[1]});
+            }
+        }
+        return greedy;
+    }
+
+    /**
+     * Branch and bound over the uncovered row with the fewest covering examples, bounded by the greedy cover and by the given number of search nodes.
+     */
+    private void searchCover(long maxSearchNodes) {
+        List<Integer> chosen = new ArrayList<>();
+        exact = search((BitSet) coveredRows.clone(), chosen, maxSearchNodes);
+    }
+
+    /**
+     * @return false if the search was cut off by the node limit
+     */
+    private boolean search(BitSet uncovered, List<Integer> chosen, long maxSearchNodes) {
+        if (++searchNodes > maxSearchNodes) {
+            return false;
+        }
+        if (uncovered.isEmpty()) {
+            if (chosen.size() < cover.size()) {
+                cover = new ArrayList<>(chosen);
+            }
+            return true;
+        }
+
+        // Lower bound: the uncovered rows divided by the largest gain of any example
+        int maxGain = 0;
+        for (int example = 0; example < exampleRows.length; example++) {
+            maxGain = Math.max(maxGain, gain(example, uncovered));
+        }
+        if (chosen.size() + (uncovered.cardinality() + maxGain - 1) / maxGain >= cover.size()) {
+            return true;
+        }
+
+        // Every cover contains one of the examples covering the most constrained row
+        int branchRow = -1;
+        int branchCount = Integer.MAX_VALUE;
+        for (int row = uncovered.nextSetBit(0); row >= 0; row = uncovered.nextSetBit(row + 1)) {
+            int count = table.getCoverage(row).cardinality();
+            if (count < branchCount) {
+                branchRow = row;
+                branchCount = count;
+            }
+        }
+
+        boolean complete = true;
+        BitSet branchExamples = table.getCoverage(branchRow);
+        for (int example = branchExamples.nextSetBit(0); example >= 0; example = branchExamples.nextSetBit(example + 1)) {
+            BitSet remaining = (BitSet) uncovered.clone();
+            for (int row : exampleRows[example]) {
+                remaining.clear(row);
+            }
+            chosen.add(example);
+            complete &= search(remaining, chosen, maxSearchNodes);
+            chosen.remove(chosen.size() - 1);
+            if (!complete) {
+                return false;
+            }
+        }
+        return complete;
+    }
+
+    private int gain(int example, BitSet uncovered) {
+        int gain = 0;
+        for (int row : exampleRows[example]) {
+            if (uncovered.get(row)) {
+                gain++;
+            }
+        }
+        return gain;
+    }
+
+    public List<String> getCover() {
+        List<String> examples = new ArrayList<>();
+        for (int example : cover) {
+            examples.add(table.getExample(example));
+        }
+        return examples;
+    }
+
+    /**
+     * @return true if the branch and bound search completed, i.e., the cover is minimal
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public long getSearchNodes() {
+        return searchNodes;
+    }
+
+    public int getCoveredRowCount() {
+        return coveredRows.cardinality();
+    }
+
+    /**
+     * Prints a summary of the cover to standard output.
+     */
+    public void print() {
+        System.out.println("Covering set: " + cover.size() + " of " + table.getExampleCount() + " examples cover all " + getCoveredRowCount() + " covered paths.");
+        if (searchNodes > 0) {
+            System.out.println(isExact() ? "The cover is minimal (" + searchNodes + " search nodes)." : "The search for a smaller cover stopped after " + (searchNodes - 1) + " nodes.");
+        }
+    }
+
+    /**
+     * Writes the examples of the cover to the given file, one per line.
+     *
+     * @param outputFilePath the path to the output file
+     * @return the written file
+     * @throws IOException
+     */
+    public File write(String outputFilePath) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
+            for (String example : getCover()) {
+                writer.append(example).append(System.lineSeparator());
+            }
+        }
+        return new File(outputFilePath);
+    }
+}
@@ -0,0 +1,177 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration2.XMLConfiguration;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.configuration2.io.FileHandler;
+
+/**
+ * A coverage collector for continuous traffic sampling: an http server bound to localhost that accepts xml documents and folds them into a live coverage model.
+ * <p>
+ * The schema is loaded once, the documents are checked concurrently by a pool of threads against the shared match cache and credited to a {@link XMLSchemaLiveCoverage}. The server offers:
+ * <ul>
+ * <li>POST /documents (optionally ?id=name) checks the xml document in the request body, it is reported as name or post#n</li>
+ * <li>GET /coverage.csv exports a snapshot of the current coverage in the CSV format of the checker, while documents keep being accepted</li>
+ * <li>GET /stats prints the number of documents and covered paths</li>
+ * </ul>
+ */
+public final class XMLSchemaCoverageServer {
+
+    private final Map<String, Map<String, Set<String>>> bitmap;
+    private final XMLSchemaPathMatchCache matchCache;
+    private final XMLSchemaLiveCoverage liveCoverage;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong malformedDocuments = new AtomicLong();
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * Creates the server, it is started by {@link #start()}.
+     *
+     * @param port the localhost port to listen on
+     * @param threads the number of threads checking documents
+     * @param bitmap the bitmap of the schema
+     * @param matchCache the match cache over the path index of the bitmap
+     * @param liveCoverage the coverage to credit the documents to
+     * @throws IOException if the port cannot be bound
+     */
+    public XMLSchemaCoverageServer(int port, int threads, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathMatchCache matchCache, XMLSchemaLiveCoverage liveCoverage)
+        throws IOException {
+        this.bitmap = bitmap;
+        this.matchCache = matchCache;
+        this.liveCoverage = liveCoverage;
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/documents", this::handleDocument);
+        server.createContext("/coverage.csv", this::handleCoverage);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("XMLSchemaCoverageServer: " + "listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * Stops accepting documents and waits for the documents being checked.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a snapshot of the current coverage, see {@link XMLSchemaLiveCoverage#snapshot(Map)}
+     */
+    public Map<String, Map<String, Set<String>>> snapshot() {
+        return liveCoverage.snapshot(bitmap);
+    }
+
+    private void handleDocument(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "only POST is supported\n");
+            return;
+        }
+
+        long documentNumber = documents.incrementAndGet();
+        String documentId = getQueryParameter(exchange, "id");
+        if (documentId == null || documentId.isEmpty()) {
+            documentId = "post#" + documentNumber;
+        }
+
+        XMLConfiguration config = new XMLConfiguration();
+        try {
+            new FileHandler(config).load(exchange.getRequestBody());
+        } catch (ConfigurationException e) {
+            malformedDocuments.incrementAndGet();
+            respond(exchange, 400, "malformed document " + documentId + ": " + e.getMessage() + "\n");
+            return;
+        }
+
+        // Collect the distinct node paths and the distinct paths they match, each path is credited once per document
+        long matchStart = System.nanoTime();
+        Map<String, Integer> nodePaths = new HashMap<>();
+        XMLSchemaCoverageChecker.checkElement(config.getNodeModel().getRootNode(), "", nodePaths);
+        int[] pathIds = nodePaths.keySet().stream().flatMapToInt(nodePath -> Arrays.stream(matchCache.match(nodePath))).distinct().toArray();
+        liveCoverage.add(documentId, pathIds);
+        XMLSchemaRunMetrics.matchNanos.addAndGet(System.nanoTime() - matchStart);
+        XMLSchemaRunMetrics.distinctPathsMatched.addAndGet(nodePaths.size());
+        XMLSchemaRunMetrics.filesScanned.incrementAndGet();
+
+        respond(exchange, 200, documentId + "\n");
+    }
+
+    private void handleCoverage(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "only GET is supported\n");
+            return;
+        }
+
+        Map<String, Map<String, Set<String>>> snapshot = snapshot();
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (BufferedWriter csvWriter = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            XMLSchemaUtils.writeBitmapCsv(csvWriter, snapshot, null, null);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "only GET is supported\n");
+            return;
+        }
+
+        respond(exchange, 200, "documents: " + documents.get() + "\n"
+            + "malformed documents: " + malformedDocuments.get() + "\n"
+            + "covered paths: " + liveCoverage.getCoveredPaths() + " of " + matchCache.getPathIndex().size() + "\n"
+            + "match cache: " + matchCache.getHits() + " hits, " + matchCache.getMisses() + " misses\n"
+            + "uptime: " + (System.currentTimeMillis() - startMillis) / 1000 + " s\n");
+    }
+
+    private static String getQueryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return URLDecoder.decode(parameter.substring(name.length() + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
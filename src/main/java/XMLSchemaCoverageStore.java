@@ -0,0 +1,324 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A coverage store with a bounded memory budget, used instead of the sets of covering examples in the bitmap for very large example corpora.
+ * <p>
+ * Coverage is recorded as (path id, file id) pairs packed into longs. Once the in-memory buffer is full, it is sorted, deduplicated and spilled as a run to a temporary file. When the result is
+ * written the runs are merged with an external merge sort (see {@link #forEachPath(PathCoverageConsumer)}), thus, the corpus size is limited by the disk and not by the heap. Only the names of the
+ * example files are kept in memory, referenced by their file id.
+ * <p>
+ * The buffer grows up to the memory budget, which is capped at a quarter of the maximum heap. The runs are merged in passes of at most {@link #MAX_FAN_IN} runs, thus, no more files are open
+ * at once.
+ */
+public final class XMLSchemaCoverageStore implements AutoCloseable {
+
+    /**
+     * Receives the covering examples of one path, see {@link #forEachPath(PathCoverageConsumer)}.
+     */
+    public interface PathCoverageConsumer {
+        void accept(int pathId, int[] fileIds) throws IOException;
+    }
+
+    // The maximum number of runs merged (and open) at once
+    private static final int MAX_FAN_IN = 64;
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private long[] buffer = new long[MIN_BUFFER_SIZE];
+    private int bufferSize = 0;
+    private final int bufferCapacity;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private final List<String> files = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+
+    /**
+     * @param memoryBudgetBytes the memory to use for buffering (path id, file id) pairs before they are spilled to disk
+     */
+    public XMLSchemaCoverageStore(long memoryBudgetBytes) {
+        long maxBufferBytes = Runtime.getRuntime().maxMemory() / 4;
+        if (memoryBudgetBytes > maxBufferBytes) {
+            System.out.println("XMLSchemaCoverageStore: " + "the memory budget is capped at " + (maxBufferBytes / 1024 / 1024) + " MB, a quarter of the maximum heap.");
+        }
+        this.bufferCapacity = (int) Math.max(MIN_BUFFER_SIZE, Math.min(Integer.MAX_VALUE - 8, Math.min(memoryBudgetBytes, maxBufferBytes) / Long.BYTES));
+    }
+
+    /**
+     * @param file an example file
+     * @return the id of the example file, it is assigned on first use
+     */
+    public synchronized int getFileId(String file) {
+        Integer fileId = fileIds.get(file);
+        if (fileId == null) {
+            fileId = files.size();
+            files.add(file);
+            fileIds.put(file, fileId);
+        }
+        return fileId;
+    }
+
+    public synchronized String getFile(int fileId) {
+        return files.get(fileId);
+    }
+
+    /**
+     * Records that the given file covers the given path, the buffer is spilled to disk if it is full.
+     *
+     * @param pathId the path id
+     * @param fileId the file id (see {@link #getFileId(String)})
+     * @throws IOException if the buffer cannot be spilled
+     */
+    public synchronized void add(int pathId, int fileId) throws IOException {
+        if (bufferSize == buffer.length) {
+            if (buffer.length < bufferCapacity) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(bufferCapacity, 2L * buffer.length));
+            } else {
+                spill();
+            }
+        }
+        buffer[bufferSize++] = pack(pathId, fileId);
+    }
+
+    /**
+     * Merges the spilled runs and the buffer and passes the covering examples of each covered path to the consumer, in ascending order of the path ids. Paths without any covering example are
+     * skipped.
+     *
+     * @param consumer the consumer of the merged coverage
+     * @throws IOException if a run cannot be read
+     */
+    public synchronized void forEachPath(PathCoverageConsumer consumer) throws IOException {
+        bufferSize = sortUnique(buffer, bufferSize);
+
+        // Merge the runs in passes until the remaining ones can be merged at once
+        while (runs.size() > MAX_FAN_IN) {
+            List<File> mergedRuns = new ArrayList<>();
+            for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+                List<File> group = runs.subList(start, Math.min(runs.size(), start + MAX_FAN_IN));
+                mergedRuns.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+            }
+            runs.clear();
+            runs.addAll(mergedRuns);
+        }
+
+        PathGrouper grouper = new PathGrouper(consumer);
+        merge(runs, buffer, bufferSize, grouper::add);
+        grouper.finish();
+    }
+
+    public synchronized int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Deletes the spilled runs.
+     */
+    @Override
+    public synchronized void close() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        bufferSize = sortUnique(buffer, bufferSize);
+
+        File run = File.createTempFile("xsd-coverage-run-", ".bin");
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < bufferSize; i++) {
+                out.writeLong(buffer[i]);
+            }
+        }
+        runs.add(run);
+        bufferSize = 0;
+    }
+
+    /**
+     * Merges the given runs into a new run, the merged runs are deleted.
+     */
+    private static File mergeRuns(List<File> group) throws IOException {
+        File merged = File.createTempFile("xsd-coverage-run-", ".bin");
+        merged.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 1 << 16))) {
+            merge(group, null, 0, out::writeLong);
+        }
+        for (File run : group) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges the given sorted runs and buffer, passing each distinct (path id, file id) pair to the consumer in ascending order.
+     *
+     * @param runs the spilled runs
+     * @param entries the sorted buffer, may be null
+     * @param size the number of entries of the buffer
+     * @param consumer the consumer of the merged pairs
+     * @throws IOException if a run cannot be read
+     */
+    private static void merge(List<File> runs, long[] entries, int size, EntryConsumer consumer) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Long.compare(a.current, b.current));
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (entries != null) {
+                RunReader bufferReader = new RunReader(entries, size);
+                if (bufferReader.next()) {
+                    queue.add(bufferReader);
+                }
+            }
+
+            long last = -1;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                long entry = reader.current;
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+
+                // The same pair may have been spilled in several runs
+                if (entry != last) {
+                    consumer.accept(entry);
+                    last = entry;
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static long pack(int pathId, int fileId) {
+        return ((long) pathId << 32) | (fileId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts the first size entries and removes duplicates.
+     *
+     * @return the number of distinct entries
+     */
+    private static int sortUnique(long[] entries, int size) {
+        Arrays.sort(entries, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || entries[unique - 1] != entries[i]) {
+                entries[unique++] = entries[i];
+            }
+        }
+        return unique;
+    }
+
+    private interface EntryConsumer {
+        void accept(long entry) throws IOException;
+    }
+
+    /**
+     * Collects the merged pairs of one path id after another and passes the covering examples of each path to the consumer.
+     */
+    private static final class PathGrouper {
+
+        private final PathCoverageConsumer consumer;
+        private int currentPathId = -1;
+        private int[] currentFileIds = new int[16];
+        private int currentFileCount = 0;
+
+        PathGrouper(PathCoverageConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        void add(long entry) throws IOException {
+            int pathId = (int) (entry >>> 32);
+            if (pathId != currentPathId) {
+                finish();
+                currentPathId = pathId;
+            }
+            if (currentFileCount == currentFileIds.length) {
+                currentFileIds = Arrays.copyOf(currentFileIds, currentFileCount * 2);
+            }
+            currentFileIds[currentFileCount++] = (int) entry;
+        }
+
+        void finish() throws IOException {
+            if (currentFileCount > 0) {
+                consumer.accept(currentPathId, Arrays.copyOf(currentFileIds, currentFileCount));
+            }
+            currentFileCount = 0;
+        }
+    }
+
+    /**
+     * Reads a sorted run, either spilled to a file or the in-memory buffer.
+     */
+    private static final class RunReader {
+
+        private final DataInputStream in;
+        private final long[] entries;
+        private final int size;
+        private int position = 0;
+
+        long current;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.entries = null;
+            this.size = 0;
+        }
+
+        RunReader(long[] entries, int size) {
+            this.in = null;
+            this.entries = entries;
+            this.size = size;
+        }
+
+        boolean next() throws IOException {
+            if (in == null) {
+                if (position == size) {
+                    return false;
+                }
+                current = entries[position++];
+                return true;
+            }
+
+            try {
+                current = in.readLong();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
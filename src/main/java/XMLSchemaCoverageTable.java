@@ -0,0 +1,431 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A compact, columnar representation of the coverage result.
+ * <p>
+ * Instead of repeating the xsd file and the example paths on every row (as the CSV does) the table keeps string tables for the xsd files, the xsd paths and the example files. A row references
+ * its xsd file and xsd path by index and stores the covering examples as a bitset over the example indexes. The string tables are sorted, thus, the rows are sorted by (xsd file, xsd path).
+ * <p>
+ * The table can be written to and read from a binary file (see {@link #writeBinary(File)} and {@link #readBinary(File)}) and converted back into the CSV format (see {@link #writeCsv(String)}).
+ */
+public final class XMLSchemaCoverageTable {
+
+    // "XSDC" in ASCII
+    private static final int MAGIC = 0x58534443;
+    private static final int VERSION = 1;
+
+    // Index used for rows of xsd files without any xsd objects, these are printed as N/A
+    public static final int NOT_AVAILABLE = -1;
+
+    private final String[] xsdFiles;
+    private final String[] xsdPaths;
+    private final String[] examples;
+
+    // The row columns
+    private final int[] rowXsdFiles;
+    private final int[] rowXsdPaths;
+    private final BitSet[] rowCoverage;
+
+    private XMLSchemaCoverageTable(String[] xsdFiles, String[] xsdPaths, String[] examples, int[] rowXsdFiles, int[] rowXsdPaths, BitSet[] rowCoverage) {
+        this.xsdFiles = xsdFiles;
+        this.xsdPaths = xsdPaths;
+        this.examples = examples;
+        this.rowXsdFiles = rowXsdFiles;
+        this.rowXsdPaths = rowXsdPaths;
+        this.rowCoverage = rowCoverage;
+    }
+
+    /**
+     * Builds the table out of the given bitmap.
+     *
+     * @param bitmap the bitmap, i.e., xsdFilePath -> (xsd path -> set of covering example files)
+     * @return the table
+     */
+    public static XMLSchemaCoverageTable fromBitmap(Map<String, Map<String, Set<String>>> bitmap) {
+        // Gather the string tables first, sorted so that the indexes follow the string order
+        TreeSet<String> xsdFileSet = new TreeSet<>(bitmap.keySet());
+        TreeSet<String> xsdPathSet = new TreeSet<>();
+        TreeSet<String> exampleSet = new TreeSet<>();
+        int rowCount = 0;
+        for (Map<String, Set<String>> pathToFiles : bitmap.values()) {
+            if (pathToFiles == null) {
+                rowCount++;
+            } else {
+                rowCount += pathToFiles.size();
+                for (Entry<String, Set<String>> pathToFile : pathToFiles.entrySet()) {
+                    xsdPathSet.add(pathToFile.getKey());
+                    exampleSet.addAll(pathToFile.getValue());
+                }
+            }
+        }
+
+        String[] xsdFiles = xsdFileSet.toArray(new String[0]);
+        String[] xsdPaths = xsdPathSet.toArray(new String[0]);
+        String[] examples = exampleSet.toArray(new String[0]);
+        Map<String, Integer> xsdPathIndexes = indexOf(xsdPaths);
+        Map<String, Integer> exampleIndexes = indexOf(examples);
+
+        int[] rowXsdFiles = new int[rowCount];
+        int[] rowXsdPaths = new int[rowCount];
+        BitSet[] rowCoverage = new BitSet[rowCount];
+        int row = 0;
+        for (int xsdFile = 0; xsdFile < xsdFiles.length; xsdFile++) {
+            Map<String, Set<String>> pathToFiles = bitmap.get(xsdFiles[xsdFile]);
+            if (pathToFiles == null) {
+                rowXsdFiles[row] = xsdFile;
+                rowXsdPaths[row] = NOT_AVAILABLE;
+                rowCoverage[row] = new BitSet();
+                row++;
+                continue;
+            }
+
+            for (Entry<String, Set<String>> pathToFile : new TreeMap<>(pathToFiles).entrySet()) {
+                BitSet coverage = new BitSet(examples.length);
+                for (String example : pathToFile.getValue()) {
+                    coverage.set(exampleIndexes.get(example));
+                }
+                rowXsdFiles[row] = xsdFile;
+                rowXsdPaths[row] = xsdPathIndexes.get(pathToFile.getKey());
+                rowCoverage[row] = coverage;
+                row++;
+            }
+        }
+
+        return new XMLSchemaCoverageTable(xsdFiles, xsdPaths, examples, rowXsdFiles, rowXsdPaths, rowCoverage);
+    }
+
+    /**
+     * Merges several tables, e.g., the partial results of shards, into one. Rows with the same xsd file and xsd path are combined by uniting their covering examples.
+     *
+     * @param tables the tables to merge
+     * @return the merged table
+     */
+    public static XMLSchemaCoverageTable merge(List<XMLSchemaCoverageTable> tables) {
+        // Build the united string tables
+        TreeSet<String> xsdFileSet = new TreeSet<>();
+        TreeSet<String> xsdPathSet = new TreeSet<>();
+        TreeSet<String> exampleSet = new TreeSet<>();
+        for (XMLSchemaCoverageTable table : tables) {
+            xsdFileSet.addAll(Arrays.asList(table.xsdFiles));
+            xsdPathSet.addAll(Arrays.asList(table.xsdPaths));
+            exampleSet.addAll(Arrays.asList(table.examples));
+        }
+        String[] xsdFiles = xsdFileSet.toArray(new String[0]);
+        String[] xsdPaths = xsdPathSet.toArray(new String[0]);
+        String[] examples = exampleSet.toArray(new String[0]);
+        Map<String, Integer> xsdFileIndexes = indexOf(xsdFiles);
+        Map<String, Integer> xsdPathIndexes = indexOf(xsdPaths);
+        Map<String, Integer> exampleIndexes = indexOf(examples);
+
+        // Then remap the rows of every table, keyed by (xsd file, xsd path) so that the rows stay sorted
+        TreeMap<Long, BitSet> rows = new TreeMap<>();
+        for (XMLSchemaCoverageTable table : tables) {
+            int[] exampleRemap = new int[table.examples.length];
+            for (int example = 0; example < exampleRemap.length; example++) {
+                exampleRemap[example] = exampleIndexes.get(table.examples[example]);
+            }
+
+            for (int row = 0; row < table.getRowCount(); row++) {
+                int xsdFile = xsdFileIndexes.get(table.xsdFiles[table.rowXsdFiles[row]]);
+                int xsdPath = table.rowXsdPaths[row] == NOT_AVAILABLE ? NOT_AVAILABLE : xsdPathIndexes.get(table.xsdPaths[table.rowXsdPaths[row]]);
+                BitSet coverage = rows.computeIfAbsent(((long) xsdFile << 32) | (xsdPath + 1L), key -> new BitSet());
+
+                BitSet tableCoverage = table.rowCoverage[row];
+                for (int example = tableCoverage.nextSetBit(0); example >= 0; example = tableCoverage.nextSetBit(example + 1)) {
+                    coverage.set(exampleRemap[example]);
+                }
+            }
+        }
+
+        int[] rowXsdFiles = new int[rows.size()];
+        int[] rowXsdPaths = new int[rows.size()];
+        BitSet[] rowCoverage = new BitSet[rows.size()];
+        int row = 0;
+        for (Entry<Long, BitSet> entry : rows.entrySet()) {
+            rowXsdFiles[row] = (int) (entry.getKey() >>> 32);
+            rowXsdPaths[row] = (int) (entry.getKey() & 0xFFFFFFFFL) - 1;
+            rowCoverage[row] = entry.getValue();
+            row++;
+        }
+
+        return new XMLSchemaCoverageTable(xsdFiles, xsdPaths, examples, rowXsdFiles, rowXsdPaths, rowCoverage);
+    }
+
+    /**
+     * Writes the table in the binary format: a header, the three string tables and then the row columns, i.e., all xsd file indexes, all xsd path indexes and all coverage bitsets.
+     *
+     * @param file the file to write to
+     * @throws IOException
+     */
+    public void writeBinary(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            writeStrings(out, xsdFiles);
+            writeStrings(out, xsdPaths);
+            writeStrings(out, examples);
+
+            out.writeInt(getRowCount());
+            for (int xsdFile : rowXsdFiles) {
+                out.writeInt(xsdFile);
+            }
+            for (int xsdPath : rowXsdPaths) {
+                out.writeInt(xsdPath);
+            }
+            for (BitSet coverage : rowCoverage) {
+                long[] words = coverage.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #writeBinary(File)}.
+     *
+     * @param file the file to read from
+     * @return the table
+     * @throws IOException if the file cannot be read or is not a binary coverage file
+     */
+    public static XMLSchemaCoverageTable readBinary(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a binary coverage file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary coverage file version " + version + ": " + file);
+            }
+
+            String[] xsdFiles = readStrings(in);
+            String[] xsdPaths = readStrings(in);
+            String[] examples = readStrings(in);
+
+            int rowCount = in.readInt();
+            int[] rowXsdFiles = new int[rowCount];
+            int[] rowXsdPaths = new int[rowCount];
+            BitSet[] rowCoverage = new BitSet[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                rowXsdFiles[row] = in.readInt();
+            }
+            for (int row = 0; row < rowCount; row++) {
+                rowXsdPaths[row] = in.readInt();
+            }
+            for (int row = 0; row < rowCount; row++) {
+                long[] words = new long[in.readInt()];
+                for (int word = 0; word < words.length; word++) {
+                    words[word] = in.readLong();
+                }
+                rowCoverage[row] = BitSet.valueOf(words);
+            }
+
+            return new XMLSchemaCoverageTable(xsdFiles, xsdPaths, examples, rowXsdFiles, rowXsdPaths, rowCoverage);
+        }
+    }
+
+    /**
+     * Reads a table written as CSV by {@link XMLSchemaUtils#printBitmapToCsv(String, Map)} or {@link #writeCsv(String)}. The occurrence columns written with --count are ignored.
+     *
+     * @param file the file to read from
+     * @return the table
+     * @throws IOException if the file cannot be read or a row cannot be parsed
+     */
+    public static XMLSchemaCoverageTable readCsv(File file) throws IOException {
+        String elementSeparator = File.pathSeparator + "element" + File.pathSeparator;
+        String notAvailableSuffix = File.pathSeparator + "N/A" + File.pathSeparator + "N/A" + File.pathSeparator + "N/A";
+        String examplesSeparator = File.pathSeparator + "[";
+
+        Map<String, Map<String, Set<String>>> bitmap = new HashMap<>();
+        try (BufferedReader csvFileReader = new BufferedReader(new FileReader(file), 1 << 16)) {
+            // Skip the header, it tells if the rows end in the estimate columns of a sample (--sample)
+            String line = csvFileReader.readLine();
+            int estimateColumns = line != null && line.endsWith(";Estimated_usage;Usage_lower_95;Usage_upper_95") ? 3 : 0;
+            while ((line = csvFileReader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                // Files without xsd objects
+                if (line.endsWith(notAvailableSuffix)) {
+                    bitmap.putIfAbsent(line.substring(0, line.length() - notAvailableSuffix.length()), null);
+                    continue;
+                }
+
+                // Estimate and occurrence columns are not part of the table, they are dropped
+                for (int column = 0; column < estimateColumns; column++) {
+                    if (line.lastIndexOf(File.pathSeparator) < 0) {
+                        throw new IOException("Cannot parse coverage row in " + file + ": " + line);
+                    }
+                    line = line.substring(0, line.lastIndexOf(File.pathSeparator));
+                }
+                if (line.endsWith("}") && line.lastIndexOf(File.pathSeparator + "{") > 0) {
+                    line = line.substring(0, line.lastIndexOf(File.pathSeparator + "{"));
+                    line = line.substring(0, line.lastIndexOf(File.pathSeparator));
+                }
+
+                // The xsd file and the examples may both contain the separator, thus, we split at the type and at the start of the example list
+                int elementIndex = line.indexOf(elementSeparator);
+                int examplesIndex = line.lastIndexOf(examplesSeparator);
+                if (elementIndex < 0 || examplesIndex < elementIndex || !line.endsWith("]")) {
+                    throw new IOException("Cannot parse coverage row in " + file + ": " + line);
+                }
+
+                Set<String> coveringExamples = new HashSet<>();
+                String examples = line.substring(examplesIndex + examplesSeparator.length(), line.length() - 1);
+                if (!examples.isEmpty()) {
+                    coveringExamples.addAll(Arrays.asList(examples.split(", ")));
+                }
+
+                String xsdFile = line.substring(0, elementIndex);
+                if (bitmap.get(xsdFile) == null) {
+                    bitmap.put(xsdFile, new HashMap<>());
+                }
+                bitmap.get(xsdFile).put(line.substring(elementIndex + elementSeparator.length(), examplesIndex), coveringExamples);
+            }
+        }
+
+        return fromBitmap(bitmap);
+    }
+
+    /**
+     * Reads a table from either the binary or the CSV format, the format is detected by the header of the file.
+     *
+     * @param file the file to read from
+     * @return the table
+     * @throws IOException
+     */
+    public static XMLSchemaCoverageTable read(File file) throws IOException {
+        int magic;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            magic = file.length() >= 4 ? in.readInt() : 0;
+        }
+
+        return magic == MAGIC ? readBinary(file) : readCsv(file);
+    }
+
+    /**
+     * Writes the table in the same CSV format as {@link XMLSchemaUtils#printBitmapToCsv(String, Map)}.
+     *
+     * @param outputFilePath the path to the output file
+     * @return the written file
+     * @throws IOException
+     */
+    public File writeCsv(String outputFilePath) throws IOException {
+        try (BufferedWriter csvFileWriter = new BufferedWriter(new FileWriter(outputFilePath))) {
+            csvFileWriter.append("File;Type;Pseudo_path;Covering_examples\n");
+            for (int row = 0; row < getRowCount(); row++) {
+                if (rowXsdPaths[row] == NOT_AVAILABLE) {
+                    csvFileWriter.append(getXsdFile(row)).append(File.pathSeparator).append("N/A").append(File.pathSeparator).append("N/A").append(File.pathSeparator)
+                        .append("N/A")
+                        .append(System.lineSeparator());
+                } else {
+                    csvFileWriter.append(getXsdFile(row)).append(File.pathSeparator).append("element").append(File.pathSeparator).append(getXsdPath(row))
+                        .append(File.pathSeparator)
+                        .append(getCoveringExamples(row).toString())
+                        .append(System.lineSeparator());
+                }
+            }
+        }
+
+        return new File(outputFilePath);
+    }
+
+    public int getRowCount() {
+        return rowXsdFiles.length;
+    }
+
+    public String getXsdFile(int row) {
+        return xsdFiles[rowXsdFiles[row]];
+    }
+
+    /**
+     * @param row the row
+     * @return the xsd path of the row or null if the xsd file of the row has no xsd objects
+     */
+    public String getXsdPath(int row) {
+        return rowXsdPaths[row] == NOT_AVAILABLE ? null : xsdPaths[rowXsdPaths[row]];
+    }
+
+    /**
+     * @param row the row
+     * @return the bitset of the covering examples, use {@link #getExample(int)} to resolve the indexes
+     */
+    public BitSet getCoverage(int row) {
+        return rowCoverage[row];
+    }
+
+    public List<String> getCoveringExamples(int row) {
+        List<String> coveringExamples = new ArrayList<>();
+        BitSet coverage = rowCoverage[row];
+        for (int example = coverage.nextSetBit(0); example >= 0; example = coverage.nextSetBit(example + 1)) {
+            coveringExamples.add(examples[example]);
+        }
+        return coveringExamples;
+    }
+
+    public int getExampleCount() {
+        return examples.length;
+    }
+
+    public String getExample(int example) {
+        return examples[example];
+    }
+
+    private static Map<String, Integer> indexOf(String[] strings) {
+        Map<String, Integer> indexes = new HashMap<>(strings.length * 2);
+        for (int i = 0; i < strings.length; i++) {
+            indexes.put(strings[i], i);
+        }
+        return indexes;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return "XMLSchemaCoverageTable{" +
+            "xsdFiles=" + xsdFiles.length +
+            ", xsdPaths=" + xsdPaths.length +
+            ", examples=" + examples.length +
+            ", rows=" + getRowCount() +
+            '}';
+    }
+}
@@ -1,5 +1,6 @@
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.ws.commons.schema.XmlSchemaExternal;
 import org.apache.ws.commons.schema.XmlSchemaObject;
@@ -23,17 +24,59 @@ public final class XMLSchemaDependencyChecker {
      */
     public static void buildImportIncludeDependencyGraph(XSDSchemaGraph xsdSchemaGraph, String predecessorCanonicalPath, String predecessorName, String folderName, String fileName)
         throws IOException {
-        File rootFile = XMLSchemaUtils.openFileOrFolder(folderName, fileName);
+        buildImportIncludeDependencyGraph(xsdSchemaGraph, predecessorCanonicalPath, predecessorName, folderName, fileName, null);
+    }
 
-        List<XmlSchemaObject> schemaItems = XMLSchemaUtils.getSchemaItems(rootFile, folderName);
+    /**
+     * Builds the dependency graph like {@link #buildImportIncludeDependencyGraph(XSDSchemaGraph, String, String, String, String)}, but only parses the files that changed since the given cache
+     * was written, the includes and imports of the unchanged files are taken from the cache.
+     *
+     * @param xsdSchemaGraph A graph of dependencies
+     * @param predecessorCanonicalPath On initial call this can be null, but identifies the predecessors of the current file
+     * @param predecessorName On initial call this can be null, but identifies the predecessors of the current file
+     * @param folderName The current XSD folder to use for dependency detection
+     * @param fileName The current "main" XSD file to use for dependency detection
+     * @param buildCache the cache of the previous run, null to parse all files
+     * @throws IOException
+     */
+    public static void buildImportIncludeDependencyGraph(XSDSchemaGraph xsdSchemaGraph, String predecessorCanonicalPath, String predecessorName, String folderName, String fileName,
+        XMLSchemaBuildCache buildCache) throws IOException {
+        File rootFile = XMLSchemaUtils.openFileOrFolder(folderName, fileName);
 
         // If the vertex we tried to add to our graph was already in the graph we have a circular dependency and return without going further.
         if (!xsdSchemaGraph.addVertex(predecessorCanonicalPath, predecessorName, rootFile.getCanonicalPath(), rootFile.getName())) {
             return;
         }
 
-        for (XmlSchemaObject schemaItem : schemaItems) {
-            // For all includes and imports call this method recursively
+        List<String[]> externals = null;
+        if (buildCache != null && buildCache.isUnchanged(rootFile, folderName, fileName)) {
+            externals = buildCache.getExternals(rootFile.getCanonicalPath());
+        }
+        if (externals == null) {
+            externals = getExternals(rootFile, folderName);
+            if (buildCache != null) {
+                buildCache.setExternals(rootFile.getCanonicalPath(), externals);
+            }
+        }
+
+        // For all includes and imports call this method recursively
+        for (String[] external : externals) {
+            buildImportIncludeDependencyGraph(xsdSchemaGraph, rootFile.getCanonicalPath(), rootFile.getName(), external[0], external[1], buildCache);
+        }
+    }
+
+    /**
+     * Reads the includes and imports of the given xsd file.
+     *
+     * @param rootFile the xsd file
+     * @param folderName the folder of the xsd file
+     * @return the folder and file name of each include and import
+     * @throws IOException
+     */
+    private static List<String[]> getExternals(File rootFile, String folderName) throws IOException {
+        List<String[]> externals = new ArrayList<>();
+
+        for (XmlSchemaObject schemaItem : XMLSchemaUtils.getSchemaItems(rootFile, folderName)) {
             if (schemaItem instanceof XmlSchemaExternal) {  //handles import and includess as the same
                 // Get the relative location of the file to be loaded
                 String schemaLocation = ((XmlSchemaExternal) schemaItem).getSchemaLocation();
@@ -44,12 +87,14 @@ public final class XMLSchemaDependencyChecker {
                     // Resolve the folder path
                     File schemaFile = XMLSchemaUtils.openFileOrFolder(folderName, schemaLocation);
                     File schemaFolder = XMLSchemaUtils.openFileOrFolder(schemaFile.getParent(), null);
-                    buildImportIncludeDependencyGraph(xsdSchemaGraph, rootFile.getCanonicalPath(), rootFile.getName(), schemaFolder.getCanonicalPath() + File.separator, schemaFile.getName());
+                    externals.add(new String[] {schemaFolder.getCanonicalPath() + File.separator, schemaFile.getName()});
                 } else {
-                    buildImportIncludeDependencyGraph(xsdSchemaGraph, rootFile.getCanonicalPath(), rootFile.getName(), folderName, schemaLocation);
+                    externals.add(new String[] {folderName, schemaLocation});
                 }
             }
         }
+
+        return externals;
     }
 
 }
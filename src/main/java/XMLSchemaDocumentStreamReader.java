@@ -0,0 +1,243 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Splits a stream of concatenated (or newline delimited) xml documents, e.g. captured production traffic piped into the checker, into single documents.
+ * <p>
+ * The stream is read once and scanned lexically: start and end tags are counted (skipping comments, CDATA sections, processing instructions and doctype declarations) and a document is complete
+ * when its root element is closed. Only the current document is held in memory and a document larger than the maximum size is dropped. Text outside of the documents, e.g. the time stamps of a
+ * log, is ignored. The documents are named stream#n, with n counting from 1.
+ */
+public final class XMLSchemaDocumentStreamReader {
+
+    // Documents larger than this (in characters) are dropped, so that a document that is never closed cannot use up the memory
+    public static final int DEFAULT_MAX_DOCUMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Receives the documents of a stream, see {@link #forEachDocument(InputStream, String, DocumentConsumer)}.
+     */
+    public interface DocumentConsumer {
+        void accept(String documentId, String document) throws IOException, ConfigurationException;
+    }
+
+    private final Reader reader;
+    private final int maxDocumentSize;
+
+    private final char[] buffer = new char[1 << 16];
+    private int bufferPosition = 0;
+    private int bufferLength = 0;
+
+    // The document read so far and its depth of open elements
+    private final StringBuilder document = new StringBuilder();
+    private int depth = 0;
+    private boolean oversized = false;
+
+    private XMLSchemaDocumentStreamReader(Reader reader, int maxDocumentSize) {
+        this.reader = reader;
+        this.maxDocumentSize = maxDocumentSize;
+    }
+
+    /**
+     * Reads the stream (UTF-8) and passes each complete document to the consumer. The bytes read are added to {@link XMLSchemaRunMetrics#bytesScanned}.
+     *
+     * @param in the stream of documents, it is not closed
+     * @param streamName the name of the stream, used as prefix of the document ids
+     * @param consumer the consumer of the documents
+     * @return the number of documents found
+     * @throws IOException if the stream cannot be read
+     * @throws ConfigurationException if the consumer cannot parse a document
+     */
+    public static long forEachDocument(InputStream in, String streamName, DocumentConsumer consumer) throws IOException, ConfigurationException {
+        Reader reader = new BufferedReader(new InputStreamReader(new ProxyInputStream(in) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    XMLSchemaRunMetrics.bytesScanned.addAndGet(n);
+                }
+            }
+        }, StandardCharsets.UTF_8), 1 << 16);
+
+        return new XMLSchemaDocumentStreamReader(reader, DEFAULT_MAX_DOCUMENT_SIZE).split(streamName, consumer);
+    }
+
+    private long split(String streamName, DocumentConsumer consumer) throws IOException, ConfigurationException {
+        long documents = 0;
+
+        for (int c = read(); c >= 0; c = read()) {
+            if (c != '<') {
+                // Text belongs to a document only within its root element
+                if (depth > 0) {
+                    append((char) c);
+                }
+                continue;
+            }
+
+            int next = read();
+            boolean elementTag = false;
+            if (next == '?') {
+                // Processing instruction or xml declaration
+                int start = document.length();
+                append('<', '?');
+                copyUntil("?>");
+                // An xml declaration starts a new document, what was read before was no document (e.g. a tag in a log line)
+                if (depth > 0 && document.length() > start + 5 && document.substring(start, start + 5).equals("<?xml") && Character.isWhitespace(document.charAt(start + 5))) {
+                    System.out.println("XMLSchemaDocumentStreamReader: " + "ignored an incomplete document before " + streamName + "#" + (documents + 1));
+                    document.delete(0, start);
+                    depth = 0;
+                }
+            } else if (next == '!') {
+                append('<', '!');
+                copyMarkupDeclaration();
+            } else if (next == '/') {
+                append('<', '/');
+                copyTag();
+                depth--;
+                elementTag = true;
+            } else if (next >= 0 && isNameStart((char) next)) {
+                append('<', (char) next);
+                if (!copyTag()) {
+                    depth++;
+                }
+                elementTag = true;
+            } else {
+                // A lonely '<' in the text, e.g. of a log line between two documents
+                if (depth > 0) {
+                    append('<');
+                }
+                if (next >= 0) {
+                    unread();
+                }
+                continue;
+            }
+
+            if (depth < 0) {
+                // An end tag without a start tag, not part of any document
+                depth = 0;
+                resetDocument();
+            } else if (depth == 0 && elementTag) {
+                // The root element is closed
+                documents++;
+                if (oversized) {
+                    System.out.println("XMLSchemaDocumentStreamReader: " + "dropped document " + streamName + "#" + documents + ", it is larger than " + maxDocumentSize + " characters");
+                } else {
+                    consumer.accept(streamName + "#" + documents, document.toString());
+                }
+                resetDocument();
+            }
+        }
+
+        if (depth > 0) {
+            System.out.println("XMLSchemaDocumentStreamReader: " + "ignored an incomplete document at the end of " + streamName);
+        }
+        return documents;
+    }
+
+    /**
+     * Copies the rest of a start or end tag, respecting quoted attribute values.
+     *
+     * @return true if the tag was an empty element tag (/&gt;)
+     */
+    private boolean copyTag() throws IOException {
+        int quote = 0;
+        int previous = 0;
+        for (int c = read(); c >= 0; c = read()) {
+            append((char) c);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return previous == '/';
+            }
+            previous = c;
+        }
+        return false;
+    }
+
+    /**
+     * Copies a comment, a CDATA section or a doctype declaration (with an internal subset).
+     */
+    private void copyMarkupDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            append('-');
+            copyUntil("-->");
+        } else if (c == '[') {
+            append('[');
+            copyUntil("]]>");
+        } else if (c >= 0) {
+            append((char) c);
+            int brackets = 0;
+            for (c = read(); c >= 0; c = read()) {
+                append((char) c);
+                if (c == '[') {
+                    brackets++;
+                } else if (c == ']') {
+                    brackets--;
+                } else if (c == '>' && brackets <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void copyUntil(String end) throws IOException {
+        int matched = 0;
+        for (int c = read(); c >= 0; c = read()) {
+            append((char) c);
+            if (c == end.charAt(matched)) {
+                matched++;
+                if (matched == end.length()) {
+                    return;
+                }
+            } else if (c != end.charAt(0)) {
+                // The ends (?>, --> and ]]>) repeat their first character only, e.g. in "--->" the last three characters still match
+                matched = 0;
+            }
+        }
+    }
+
+    private void append(char... chars) {
+        if (document.length() + chars.length > maxDocumentSize) {
+            oversized = true;
+            return;
+        }
+        document.append(chars);
+    }
+
+    private void resetDocument() {
+        document.setLength(0);
+        oversized = false;
+        if (document.capacity() > (1 << 20)) {
+            document.trimToSize();
+        }
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == ':';
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = reader.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private void unread() {
+        bufferPosition--;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The coverage of a long running collector (see {@link XMLSchemaCoverageServer}), updated by many threads at once and read by snapshots while the updates go on.
+ * <p>
+ * The covering examples are kept per path id of a {@link XMLSchemaPathIndex}, guarded by a fixed number of locks: path id i is guarded by lock i % stripes. Two documents only wait for each
+ * other if they cover paths of the same stripe at the same time, a snapshot only holds one stripe while copying one path. As a collector may run for days, only the first examples per path are
+ * kept.
+ */
+public final class XMLSchemaLiveCoverage {
+
+    public static final int DEFAULT_STRIPES = 64;
+    public static final int DEFAULT_EXAMPLES_PER_PATH = 100;
+
+    private final XMLSchemaPathIndex pathIndex;
+    private final int examplesPerPath;
+
+    private final Object[] locks;
+
+    // path id -> the first covering examples, guarded by the lock of the path id
+    private final List<Set<String>> examples;
+
+    // path id -> number of covering documents, also counting those beyond the kept examples
+    private final AtomicLongArray documents;
+
+    public XMLSchemaLiveCoverage(XMLSchemaPathIndex pathIndex, int stripes, int examplesPerPath) {
+        this.pathIndex = pathIndex;
+        this.examplesPerPath = examplesPerPath;
+        this.locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+        this.examples = new ArrayList<>(Collections.nCopies(pathIndex.size(), null));
+        this.documents = new AtomicLongArray(pathIndex.size());
+    }
+
+    /**
+     * Credits a document to the paths it covers.
+     *
+     * @param documentId the id of the document
+     * @param pathIds the ids of the covered paths, each at most once
+     */
+    public void add(String documentId, int[] pathIds) {
+        for (int pathId : pathIds) {
+            documents.incrementAndGet(pathId);
+            synchronized (locks[pathId % locks.length]) {
+                if (examples.get(pathId) == null) {
+                    examples.set(pathId, new LinkedHashSet<>());
+                }
+                if (examples.get(pathId).size() < examplesPerPath) {
+                    examples.get(pathId).add(documentId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the current coverage into a bitmap, path by path, while documents keep being added. Thus, a document added during the snapshot may be part of it for some of its paths only.
+     *
+     * @param bitmap the bitmap the path index was built on, its files without xsd objects are taken over as is
+     * @return a bitmap of the covering examples in the order of the path ids
+     */
+    public Map<String, Map<String, Set<String>>> snapshot(Map<String, Map<String, Set<String>>> bitmap) {
+        Map<String, Map<String, Set<String>>> snapshot = new LinkedHashMap<>();
+        for (int pathId = 0; pathId < pathIndex.size(); pathId++) {
+            Set<String> coveringExamples;
+            synchronized (locks[pathId % locks.length]) {
+                coveringExamples = examples.get(pathId) == null ? new LinkedHashSet<>() : new LinkedHashSet<>(examples.get(pathId));
+            }
+            snapshot.computeIfAbsent(pathIndex.getXsdFile(pathId), xsdFile -> new LinkedHashMap<>()).put(pathIndex.getXsdPath(pathId), coveringExamples);
+        }
+        for (Map.Entry<String, Map<String, Set<String>>> entry : bitmap.entrySet()) {
+            if (entry.getValue() == null) {
+                snapshot.put(entry.getKey(), null);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the number of paths covered by at least one document
+     */
+    public int getCoveredPaths() {
+        int covered = 0;
+        for (int pathId = 0; pathId < documents.length(); pathId++) {
+            covered += documents.get(pathId) > 0 ? 1 : 0;
+        }
+        return covered;
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often the xml elements matching an xsd path occur in the examples.
+ * <p>
+ * For every path id (e.g. of the {@link XMLSchemaPathIndex}) we keep the total number of occurrences and the top-K example files by number of occurrences. Everything is kept in primitive arrays
+ * indexed by the path id, thus, there is no object per path or per occurrence. Example files are referenced by an integer id.
+ */
+public final class XMLSchemaOccurrenceCounter {
+
+    public static final int DEFAULT_TOP_K = 3;
+
+    private final int topK;
+
+    // path id -> total number of occurrences
+    private long[] totals = new long[1024];
+
+    // (path id * topK + slot) -> file id + 1 (0 for an empty slot) and its number of occurrences
+    private int[] topFiles;
+    private long[] topCounts;
+
+    private final List<String> files = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+
+    public XMLSchemaOccurrenceCounter(int topK) {
+        this.topK = topK;
+        this.topFiles = new int[totals.length * topK];
+        this.topCounts = new long[totals.length * topK];
+    }
+
+    /**
+     * @param file an example file
+     * @return the id of the example file, it is assigned on first use
+     */
+    public synchronized int getFileId(String file) {
+        Integer fileId = fileIds.get(file);
+        if (fileId == null) {
+            fileId = files.size();
+            files.add(file);
+            fileIds.put(file, fileId);
+        }
+        return fileId;
+    }
+
+    /**
+     * Adds occurrences of the given path in the given file.
+     *
+     * @param pathId the path id
+     * @param fileId the file id (see {@link #getFileId(String)})
+     * @param count the number of occurrences
+     */
+    public synchronized void add(int pathId, int fileId, long count) {
+        ensureCapacity(pathId);
+        totals[pathId] += count;
+        addToTop(pathId, fileId, count);
+    }
+
+    /**
+     * Adds all occurrences counted for a path of another counter to a path of this counter, e.g., to sum up several schema model instances with the same flat path.
+     *
+     * @param pathId the path id in this counter
+     * @param source the other counter
+     * @param sourcePathId the path id in the other counter
+     */
+    public synchronized void addAll(int pathId, XMLSchemaOccurrenceCounter source, int sourcePathId) {
+        if (pathId < 0 || sourcePathId >= source.totals.length) {
+            return;
+        }
+
+        ensureCapacity(pathId);
+        totals[pathId] += source.totals[sourcePathId];
+        for (int slot = sourcePathId * source.topK; slot < (sourcePathId + 1) * source.topK; slot++) {
+            if (source.topFiles[slot] != 0) {
+                addToTop(pathId, getFileId(source.files.get(source.topFiles[slot] - 1)), source.topCounts[slot]);
+            }
+        }
+    }
+
+    public synchronized long getTotal(int pathId) {
+        return pathId >= 0 && pathId < totals.length ? totals[pathId] : 0;
+    }
+
+    /**
+     * @param pathId the path id
+     * @return the top-K files of the path by number of occurrences, formatted as {file=count, ...}
+     */
+    public synchronized String formatTopFiles(int pathId) {
+        StringBuilder topFilesString = new StringBuilder("{");
+        if (pathId >= 0 && pathId < totals.length) {
+            // Sort the slots by descending count
+            Integer[] slots = new Integer[topK];
+            for (int slot = 0; slot < topK; slot++) {
+                slots[slot] = pathId * topK + slot;
+            }
+            Arrays.sort(slots, (a, b) -> Long.compare(topCounts[b], topCounts[a]));
+
+            for (int slot : slots) {
+                if (topFiles[slot] != 0) {
+                    if (topFilesString.length() > 1) {
+                        topFilesString.append(", ");
+                    }
+                    topFilesString.append(files.get(topFiles[slot] - 1)).append("=").append(topCounts[slot]);
+                }
+            }
+        }
+        return topFilesString.append("}").toString();
+    }
+
+    private void addToTop(int pathId, int fileId, long count) {
+        int minSlot = -1;
+        for (int slot = pathId * topK; slot < (pathId + 1) * topK; slot++) {
+            // The file is already in the top-K
+            if (topFiles[slot] == fileId + 1) {
+                topCounts[slot] += count;
+                return;
+            }
+            if (minSlot < 0 || topCounts[slot] < topCounts[minSlot]) {
+                minSlot = slot;
+            }
+        }
+
+        // Take an empty slot or replace the file with the fewest occurrences
+        if (topFiles[minSlot] == 0 || topCounts[minSlot] < count) {
+            topFiles[minSlot] = fileId + 1;
+            topCounts[minSlot] = count;
+        }
+    }
+
+    private void ensureCapacity(int pathId) {
+        if (pathId >= totals.length) {
+            int capacity = Math.max(pathId + 1, totals.length * 2);
+            totals = Arrays.copyOf(totals, capacity);
+            topFiles = Arrays.copyOf(topFiles, capacity * topK);
+            topCounts = Arrays.copyOf(topCounts, capacity * topK);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * An index over the bitmap that assigns an integer id to every (xsd file, xsd path) entry.
+ * <p>
+ * The ids allow referencing bitmap entries without the string keys, e.g., in caches of match results. The sets of covering examples are the ones stored in the bitmap, i.e., adding a file to
+ * the coverage of an id updates the bitmap.
+ * <p>
+ * An xsd path ending in a wildcard segment (xs:any, see {@link XMLSchemaBitmapBuilder#wildcardSegment}) matches a node path passing through an element at its position, unless that element
+ * is declared by name beside the wildcard. The namespace constraint of the wildcard is not checked, the node paths carry no namespaces.
+ */
+public final class XMLSchemaPathIndex {
+
+    private final String delimiter;
+
+    // id -> xsd file the path was defined in
+    private final String[] xsdFiles;
+
+    // id -> xsd path as stored in the bitmap
+    private final String[] xsdPaths;
+
+    // id -> xsd path as used for matching (namespace prefix removed)
+    private final String[] structurePaths;
+
+    // id -> the path leading to the wildcard including the delimiter before it, null if the xsd path does not end in a wildcard
+    private final String[] wildcardParents;
+
+    // The xsd paths as used for matching, to tell the elements declared by name beside a wildcard
+    private final Set<String> structurePathSet;
+
+    // id -> set of covering example files (shared with the bitmap)
+    private final List<Set<String>> coverage;
+
+    // (xsd file, xsd path) -> id, only built if ids are looked up by path
+    private Map<String, Integer> ids;
+
+    private XMLSchemaPathIndex(String delimiter, List<String> xsdFiles, List<String> xsdPaths, List<Set<String>> coverage) {
+        this.delimiter = delimiter;
+        this.xsdFiles = xsdFiles.toArray(new String[0]);
+        this.xsdPaths = xsdPaths.toArray(new String[0]);
+        this.structurePaths = new String[this.xsdPaths.length];
+        this.wildcardParents = new String[this.xsdPaths.length];
+        this.structurePathSet = new HashSet<>();
+        this.coverage = coverage;
+
+        String wildcardEnd = delimiter + XMLSchemaBitmapBuilder.wildcardSegment;
+        for (int id = 0; id < this.xsdPaths.length; id++) {
+            this.structurePaths[id] = this.xsdPaths[id].substring(this.xsdPaths[id].lastIndexOf(":") + 1);
+            this.structurePathSet.add(this.structurePaths[id]);
+            if (this.structurePaths[id].endsWith(wildcardEnd) && this.structurePaths[id].startsWith(delimiter)) {
+                this.wildcardParents[id] = this.structurePaths[id].substring(0, this.structurePaths[id].length() - XMLSchemaBitmapBuilder.wildcardSegment.length());
+            }
+        }
+    }
+
+    /**
+     * Builds the index over all entries of the given bitmap. Files without any xsd objects (mapped to null) get no id.
+     *
+     * @param bitmap the bitmap to index
+     * @param delimiter the path delimiter
+     * @return the index
+     */
+    public static XMLSchemaPathIndex build(Map<String, Map<String, Set<String>>> bitmap, String delimiter) {
+        List<String> xsdFiles = new ArrayList<>();
+        List<String> xsdPaths = new ArrayList<>();
+        List<Set<String>> coverage = new ArrayList<>();
+
+        for (Entry<String, Map<String, Set<String>>> filePathToStructure : bitmap.entrySet()) {
+            if (filePathToStructure.getValue() != null) {
+                for (Entry<String, Set<String>> structurePathToOccurence : filePathToStructure.getValue().entrySet()) {
+                    xsdFiles.add(filePathToStructure.getKey());
+                    xsdPaths.add(structurePathToOccurence.getKey());
+                    coverage.add(structurePathToOccurence.getValue());
+                }
+            }
+        }
+
+        return new XMLSchemaPathIndex(delimiter, xsdFiles, xsdPaths, coverage);
+    }
+
+    /**
+     * Runs the full match of the given node path against all indexed xsd paths.
+     *
+     * @param nodePath the path of an xml node
+     * @return the ids of all xsd paths matching the node path
+     */
+    public int[] match(String nodePath) {
+        int[] matches = new int[8];
+        int count = 0;
+
+        for (int id = 0; id < structurePaths.length; id++) {
+            if (matches(id, nodePath)) {
+                if (count == matches.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(matches, 0, grown, 0, count);
+                    matches = grown;
+                }
+                matches[count++] = id;
+            }
+        }
+
+        int[] result = new int[count];
+        System.arraycopy(matches, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Matches the given node path against a single xsd path, like {@link XMLSchemaUtils#fullSubpath(String, String, String)} only the first occurrence of the xsd path (of the path leading
+     * to a wildcard) is looked at.
+     *
+     * @param id the id of an xsd path
+     * @param nodePath the path of an xml node
+     * @return true if the node path matches the xsd path
+     */
+    public boolean matches(int id, String nodePath) {
+        if (wildcardParents[id] == null) {
+            return XMLSchemaUtils.fullSubpath(nodePath, structurePaths[id], delimiter);
+        }
+
+        int segmentStart = nodePath.indexOf(wildcardParents[id]);
+        if (segmentStart < 0) {
+            return false;
+        }
+        segmentStart += wildcardParents[id].length();
+        int segmentEnd = nodePath.indexOf(delimiter, segmentStart);
+        return acceptsSegment(id, nodePath.substring(segmentStart, segmentEnd < 0 ? nodePath.length() : segmentEnd));
+    }
+
+    /**
+     * A node path matches an xsd path also if it passes through it (see {@link XMLSchemaUtils#fullSubpath(String, String, String)}), this checks if the node itself is an element of the xsd path.
+     *
+     * @param id the id of a matching xsd path
+     * @param nodePath the path of an xml node
+     * @return true if the node path ends with the xsd path
+     */
+    public boolean endsWith(int id, String nodePath) {
+        if (wildcardParents[id] == null) {
+            return nodePath.endsWith(structurePaths[id]);
+        }
+
+        int segmentStart = nodePath.lastIndexOf(delimiter) + delimiter.length();
+        return nodePath.startsWith(wildcardParents[id], segmentStart - wildcardParents[id].length()) && acceptsSegment(id, nodePath.substring(segmentStart));
+    }
+
+    /**
+     * @return true if the wildcard of the given xsd path stands for the element with the given name, xs:any stands for elements only and not for the ones declared by name beside it
+     */
+    private boolean acceptsSegment(int id, String segment) {
+        return !segment.isEmpty() && !segment.startsWith(XMLSchemaBitmapBuilder.attributePrefix) && !structurePathSet.contains(wildcardParents[id] + segment);
+    }
+
+    /**
+     * @param id the id of an xsd path
+     * @return the path leading to the wildcard the xsd path ends in (including the delimiter before the wildcard), null if it does not end in a wildcard
+     */
+    public String getWildcardParent(int id) {
+        return wildcardParents[id];
+    }
+
+    /**
+     * Looks up the id of an entry, the lookup table is built on first use.
+     *
+     * @param xsdFile the xsd file the path was defined in
+     * @param xsdPath the xsd path as stored in the bitmap
+     * @return the id or -1 if the entry is not indexed
+     */
+    public synchronized int getId(String xsdFile, String xsdPath) {
+        if (ids == null) {
+            ids = new HashMap<>();
+            for (int id = 0; id < xsdPaths.length; id++) {
+                ids.put(xsdFiles[id] + "\n" + xsdPaths[id], id);
+            }
+        }
+        return ids.getOrDefault(xsdFile + "\n" + xsdPath, -1);
+    }
+
+    public int size() {
+        return xsdPaths.length;
+    }
+
+    public String getXsdFile(int id) {
+        return xsdFiles[id];
+    }
+
+    public String getXsdPath(int id) {
+        return xsdPaths[id];
+    }
+
+    /**
+     * @param id the id of an xsd path
+     * @return the xsd path as used for matching (namespace prefix removed)
+     */
+    public String getStructurePath(int id) {
+        return structurePaths[id];
+    }
+
+    public Set<String> getCoverage(int id) {
+        return coverage.get(id);
+    }
+
+    /**
+     * @return the number of xsd paths covered by at least one example
+     */
+    public int getCoveredCount() {
+        int covered = 0;
+        for (Set<String> coveringExamples : coverage) {
+            covered += coveringExamples.isEmpty() ? 0 : 1;
+        }
+        return covered;
+    }
+}
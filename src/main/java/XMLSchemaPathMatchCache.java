@@ -0,0 +1,96 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache from normalized xml node paths to the ids of the matching xsd paths (see {@link XMLSchemaPathIndex}).
+ * <p>
+ * The same node paths show up in most files of an example corpus, thus, the cache is shared across files (and threads) so that the full match is only paid once per distinct path. When the cache
+ * is full the least recently used path is evicted.
+ */
+public final class XMLSchemaPathMatchCache {
+
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private final XMLSchemaPathIndex pathIndex;
+
+    // Runs the full match instead of the path index if not null
+    private final XMLSchemaCompiledMatcher compiledMatcher;
+
+    private final LinkedHashMap<String, int[]> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public XMLSchemaPathMatchCache(XMLSchemaPathIndex pathIndex, int capacity) {
+        this(pathIndex, null, capacity);
+    }
+
+    /**
+     * @param pathIndex the index of the xsd paths
+     * @param compiledMatcher the matcher compiled from the index to run the full match with, null to run it against the index
+     * @param capacity the maximum number of cached node paths
+     */
+    public XMLSchemaPathMatchCache(XMLSchemaPathIndex pathIndex, XMLSchemaCompiledMatcher compiledMatcher, int capacity) {
+        this.pathIndex = pathIndex;
+        this.compiledMatcher = compiledMatcher;
+        this.cache = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                if (size() > capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the ids of the xsd paths matching the given node path, either from the cache or by running the full match against the path index (or the compiled matcher).
+     *
+     * @param nodePath the normalized path of an xml node
+     * @return the ids of all matching xsd paths
+     */
+    public int[] match(String nodePath) {
+        int[] matches;
+        synchronized (cache) {
+            matches = cache.get(nodePath);
+        }
+        if (matches != null) {
+            hits.incrementAndGet();
+            return matches;
+        }
+
+        // The full match is run outside the lock, two threads may compute the same path, but the result is the same
+        misses.incrementAndGet();
+        matches = compiledMatcher != null ? compiledMatcher.match(nodePath) : pathIndex.match(nodePath);
+        synchronized (cache) {
+            cache.put(nodePath, matches);
+        }
+        return matches;
+    }
+
+    public XMLSchemaPathIndex getPathIndex() {
+        return pathIndex;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Reports the progress of the example scan from a background thread.
+ * <p>
+ * The reporter only samples the counters of {@link XMLSchemaRunMetrics} at a fixed interval, thus, the scanning code does not do anything for it besides incrementing its atomics. On an
+ * interactive terminal the report line is overwritten in place, otherwise (e.g. in CI logs) one line is written per sample.
+ */
+public final class XMLSchemaProgressReporter implements Runnable {
+
+    private final long totalFiles;
+
+    private final long totalBytes;
+
+    private final long intervalMillis;
+
+    private final boolean interactive;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param totalFiles the number of example files to scan, 0 if unknown
+     * @param totalBytes the size of the example files to scan, 0 if unknown
+     * @param intervalMillis the time between two reports
+     * @param interactive true to overwrite the report line in place, false to write one line per report
+     */
+    public XMLSchemaProgressReporter(long totalFiles, long totalBytes, long intervalMillis, boolean interactive) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+        this.intervalMillis = intervalMillis;
+        this.interactive = interactive;
+        this.thread = new Thread(this, "XMLSchemaProgressReporter");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the reporter and writes a final report.
+     */
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+        if (interactive) {
+            System.out.println();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            report();
+        }
+    }
+
+    private void report() {
+        long files = XMLSchemaRunMetrics.filesScanned.get();
+        long nodes = XMLSchemaRunMetrics.nodesScanned.get();
+        long bytes = XMLSchemaRunMetrics.bytesScanned.get();
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-3);
+
+        StringBuilder line = new StringBuilder("Progress: ").append(files);
+        if (totalFiles > 0) {
+            line.append("/").append(totalFiles).append(" files (").append(String.format("%.1f", 100.0 * files / totalFiles)).append("%)");
+        } else {
+            line.append(" files");
+        }
+        line.append(", ").append(String.format("%.1f", files / seconds)).append(" files/s");
+        line.append(", ").append(String.format("%.0f", nodes / seconds)).append(" nodes/s");
+        line.append(", ").append(String.format("%.2f", bytes / seconds / (1024 * 1024))).append(" MB/s");
+
+        // The ETA is based on the bytes left, as the example files may differ a lot in size
+        if (totalBytes > 0 && bytes > 0 && bytes < totalBytes) {
+            line.append(", ETA ").append(formatDuration((long) ((totalBytes - bytes) * seconds / bytes)));
+        } else if (totalFiles > 0 && files > 0 && files < totalFiles) {
+            line.append(", ETA ").append(formatDuration((long) ((totalFiles - files) * seconds / files)));
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        line.append(", heap ").append((runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)).append("/").append(runtime.maxMemory() / (1024 * 1024)).append(" MB");
+
+        if (interactive) {
+            System.out.print("\r" + line);
+            System.out.flush();
+        } else {
+            System.out.println(line);
+        }
+    }
+
+    private static String formatDuration(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters collected while checking the examples against the schema.
+ * <p>
+ * The counters are plain atomics, so they can be incremented from the scanning code without any further synchronization and printed once the run is over.
+ */
+public final class XMLSchemaRunMetrics {
+
+    // Number of example files that were parsed and matched
+    public static final AtomicLong filesScanned = new AtomicLong();
+
+    // Size in bytes of the example files that were parsed
+    public static final AtomicLong bytesScanned = new AtomicLong();
+
+    // Number of XML nodes (elements and their attributes, without namespace declarations) visited in all example files
+    public static final AtomicLong nodesScanned = new AtomicLong();
+
+    // Number of distinct node paths per file that were actually matched against the bitmap
+    public static final AtomicLong distinctPathsMatched = new AtomicLong();
+
+    // Time spent matching node paths against the bitmap
+    public static final AtomicLong matchNanos = new AtomicLong();
+
+    // Time spent parsing (or tokenizing) the example files
+    public static final AtomicLong parseNanos = new AtomicLong();
+
+    // Number of example files read by the tag tokenizer (--parser fast) and of those it handed over to the parser
+    public static final AtomicLong tokenizedFiles = new AtomicLong();
+    public static final AtomicLong tokenizerFallbacks = new AtomicLong();
+
+    private XMLSchemaRunMetrics() {
+    }
+
+    /**
+     * Prints the collected metrics to standard output.
+     * <p>
+     * The deduplication factor is the number of visited nodes divided by the number of distinct paths matched, i.e., how many full matches the per-file deduplication saved.
+     *
+     * @param matchCache the match cache used during the scan, may be null
+     */
+    public static void print(XMLSchemaPathMatchCache matchCache) {
+        long nodes = nodesScanned.get();
+        long distinct = distinctPathsMatched.get();
+
+        System.out.println("Run metrics:");
+        System.out.println("  example files scanned: " + filesScanned.get() + " (" + (bytesScanned.get() / 1024) + " KB)");
+        System.out.println("  xml nodes scanned: " + nodes);
+        System.out.println("  parsing time: " + (parseNanos.get() / 1000000) + " ms");
+        if (parseNanos.get() > 0) {
+            System.out.println("  parsing throughput: " + String.format("%.1f", bytesScanned.get() / 1048576.0 / (parseNanos.get() / 1e9)) + " MB/s, "
+                + Math.round(nodes / (parseNanos.get() / 1e9)) + " nodes/s");
+        }
+        if (tokenizedFiles.get() > 0 || tokenizerFallbacks.get() > 0) {
+            System.out.println("  tag tokenizer: " + tokenizedFiles.get() + " files tokenized, " + tokenizerFallbacks.get() + " parsed as they could not be tokenized");
+        }
+        System.out.println("  distinct node paths matched: " + distinct);
+        if (distinct > 0) {
+            System.out.println("  deduplication factor: " + String.format("%.2f", (double) nodes / (double) distinct) + "x (" + (nodes - distinct) + " matches avoided)");
+        }
+        System.out.println("  matching time: " + (matchNanos.get() / 1000000) + " ms");
+        if (distinct > 0 && matchNanos.get() > 0) {
+            System.out.println("  matching throughput: " + Math.round(distinct / (matchNanos.get() / 1e9)) + " distinct node paths/s");
+        }
+        if (matchCache != null) {
+            System.out.println("  match cache: " + matchCache.getHits() + " hits, " + matchCache.getMisses() + " misses, " + matchCache.getEvictions() + " evictions, " + matchCache.size()
+                + " entries");
+        }
+    }
+}
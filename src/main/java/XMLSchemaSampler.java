@@ -0,0 +1,155 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Estimates how often each xsd path is used from a random sample of the example files (--sample), instead of checking all of them.
+ * <p>
+ * The files are drawn in a reproducible random order (seeded), optionally stratified by folder: then every prefix of the order holds each folder in proportion to its number of files, so the
+ * sample is self-weighting however early it stops. For each path the share of sampled files using it is estimated with a 95% Wilson score interval, narrowed by the finite population correction
+ * (it collapses once all files are sampled). The scan may stop early once every interval is narrower than the wanted precision, i.e., once the estimates no longer move noticeably.
+ */
+public final class XMLSchemaSampler {
+
+    // z of the two-sided 95% interval
+    private static final double Z = 1.959964;
+
+    // The estimates are only checked for convergence after this many files, before that a path used by no sampled file proves little
+    public static final int MIN_SAMPLE_SIZE = 100;
+
+    private final long populationSize;
+
+    // path id -> number of sampled files using the path
+    private final int[] usage;
+    private long sampleSize = 0;
+
+    /**
+     * @param pathCount the number of xsd paths (ids of the path index)
+     * @param populationSize the number of files the sample is drawn from
+     */
+    public XMLSchemaSampler(int pathCount, long populationSize) {
+        this.usage = new int[pathCount];
+        this.populationSize = populationSize;
+    }
+
+    /**
+     * Orders all files randomly for drawing the sample, the files of a prefix of the order are the sample.
+     *
+     * @param files the files to sample from
+     * @param seed the seed of the random order, the same seed and files give the same order
+     * @param stratify true to keep the share of each folder in every prefix
+     * @return the files in the order to check them
+     */
+    public static List<File> order(List<File> files, long seed, boolean stratify) {
+        Random random = new Random(seed);
+
+        // Sort first, the order of listing a folder depends on the file system
+        List<File> sortedFiles = new ArrayList<>(files);
+        sortedFiles.sort(Comparator.comparing(File::getPath));
+        if (!stratify) {
+            Collections.shuffle(sortedFiles, random);
+            return sortedFiles;
+        }
+
+        Map<String, List<File>> strata = new TreeMap<>();
+        for (File file : sortedFiles) {
+            strata.computeIfAbsent(String.valueOf(file.getParent()), folder -> new ArrayList<>()).add(file);
+        }
+        List<List<File>> strataFiles = new ArrayList<>(strata.values());
+        for (List<File> stratumFiles : strataFiles) {
+            Collections.shuffle(stratumFiles, random);
+        }
+
+        // Each stratum's k-th file is due at (k + 0.5) / size of the stratum, the files are taken in the order they are due
+        int[] taken = new int[strataFiles.size()];
+        PriorityQueue<Integer> due = new PriorityQueue<>(Comparator.<Integer>comparingDouble(stratum -> (taken[stratum] + 0.5) / strataFiles.get(stratum).size())
+            .thenComparingInt(stratum -> stratum));
+        for (int stratum = 0; stratum < strataFiles.size(); stratum++) {
+            due.add(stratum);
+        }
+        List<File> orderedFiles = new ArrayList<>(sortedFiles.size());
+        while (!due.isEmpty()) {
+            int stratum = due.poll();
+            orderedFiles.add(strataFiles.get(stratum).get(taken[stratum]++));
+            if (taken[stratum] < strataFiles.get(stratum).size()) {
+                due.add(stratum);
+            }
+        }
+        return orderedFiles;
+    }
+
+    /**
+     * Counts a sampled file.
+     *
+     * @param pathIds the ids of the paths the file uses, each at most once
+     */
+    public void addFile(int[] pathIds) {
+        for (int pathId : pathIds) {
+            usage[pathId]++;
+        }
+        sampleSize++;
+    }
+
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    public long getPopulationSize() {
+        return populationSize;
+    }
+
+    /**
+     * @param pathId the id of the path
+     * @return the share of the sampled files using the path
+     */
+    public double getEstimate(int pathId) {
+        return sampleSize == 0 ? 0 : (double) usage[pathId] / sampleSize;
+    }
+
+    /**
+     * @param pathId the id of the path
+     * @return the lower and upper bound of the 95% interval of the share of all files using the path
+     */
+    public double[] getInterval(int pathId) {
+        double p = getEstimate(pathId);
+        if (sampleSize == 0) {
+            return new double[] {0, 1};
+        }
+        if (sampleSize >= populationSize) {
+            return new double[] {p, p};
+        }
+
+        // Wilson score interval on the sample size inflated by the finite population correction
+        double n = (double) sampleSize * (populationSize - 1) / (populationSize - sampleSize);
+        double z2 = Z * Z;
+        double center = (p + z2 / (2 * n)) / (1 + z2 / n);
+        double halfWidth = Z * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n)) / (1 + z2 / n);
+        return new double[] {Math.max(0, center - halfWidth), Math.min(1, center + halfWidth)};
+    }
+
+    /**
+     * @return the largest half width of the intervals of all paths
+     */
+    public double getMaxHalfWidth() {
+        double maxHalfWidth = 0;
+        for (int pathId = 0; pathId < usage.length; pathId++) {
+            double[] interval = getInterval(pathId);
+            maxHalfWidth = Math.max(maxHalfWidth, (interval[1] - interval[0]) / 2);
+        }
+        return maxHalfWidth;
+    }
+
+    /**
+     * @param precision the wanted half width of the intervals, 0 never converges
+     * @return true if enough files were sampled and all intervals are within the precision
+     */
+    public boolean isConverged(double precision) {
+        return precision > 0 && sampleSize >= Math.min(MIN_SAMPLE_SIZE, populationSize) && getMaxHalfWidth() <= precision;
+    }
+}
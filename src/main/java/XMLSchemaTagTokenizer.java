@@ -0,0 +1,446 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A fast path for collecting the node paths of trusted examples (--parser fast): a tokenizer scanning the UTF-8 bytes of a document for start and end tags only.
+ * <p>
+ * The coverage only needs the element and attribute names and their nesting, thus, the tokenizer skips text, comments, CDATA sections and processing instructions without building any nodes and
+ * collects the same node paths as {@link XMLSchemaCoverageChecker#checkElement}. Whenever it meets something it cannot handle the same way as the parser, e.g. a doctype declaration (which may
+ * declare entities or default attributes), another encoding than UTF-8, an unknown entity reference or a document that is not well-formed, it gives up and the document is parsed as before.
+ */
+public final class XMLSchemaTagTokenizer {
+
+    private final byte[] xml;
+    private final int length;
+    private int position;
+
+    // The start of the document, behind a byte order mark if there is one
+    private int documentStart = 0;
+
+    // The path of the open elements and, per open element, the length of the path before it and the qualified name (offset and length in the document) for checking its end tag
+    private final StringBuilder path = new StringBuilder();
+    private int[] pathLengths = new int[32];
+    private int[] nameStarts = new int[32];
+    private int[] nameLengths = new int[32];
+    private int depth = 0;
+
+    // The names (offset and length in the document) of the attributes of the current tag
+    private int[] attributeStarts = new int[8];
+    private int[] attributeLengths = new int[8];
+
+    // The namespace prefixes in scope and the depth of the element declaring each
+    private String[] prefixes = new String[8];
+    private int[] prefixLevels = new int[8];
+    private int prefixCount = 0;
+
+    // The number of element and attribute nodes read so far
+    private long nodes = 0;
+
+    private XMLSchemaTagTokenizer(byte[] xml, int length) {
+        this.xml = xml;
+        this.length = length;
+    }
+
+    /**
+     * Collects the distinct node paths of a document with their number of nodes, like {@link XMLSchemaCoverageChecker#checkElement}.
+     *
+     * @param xml the document
+     * @param length the number of bytes of the document
+     * @param nodePaths the map to add the node paths to, only changed if the document could be tokenized
+     * @return the number of element and attribute nodes of the document, or -1 if the document has to be parsed
+     */
+    public static long collectNodePaths(byte[] xml, int length, Map<String, Integer> nodePaths) {
+        return new XMLSchemaTagTokenizer(xml, length).tokenize(nodePaths);
+    }
+
+    private long tokenize(Map<String, Integer> target) {
+        // The paths are only handed over once the whole document is known to be fine
+        Map<String, Integer> nodePaths = new HashMap<>();
+        boolean rootClosed = false;
+
+        // A UTF-8 byte order mark is skipped, UTF-16 and UTF-32 ones are left to the parser
+        if (length >= 3 && (xml[0] & 0xFF) == 0xEF && (xml[1] & 0xFF) == 0xBB && (xml[2] & 0xFF) == 0xBF) {
+            position = 3;
+            documentStart = 3;
+        } else if (length >= 2 && ((xml[0] & 0xFF) == 0xFE || (xml[0] & 0xFF) == 0xFF || xml[0] == 0)) {
+            return -1;
+        }
+
+        while (position < length) {
+            byte b = xml[position];
+            if (b != '<') {
+                // Text only counts within the root element, only whitespace may surround it
+                if (depth == 0 && !isWhitespace(b)) {
+                    return -1;
+                }
+                if (b == '&' && !skipReference()) {
+                    return -1;
+                }
+                position++;
+                continue;
+            }
+
+            position++;
+            if (position >= length) {
+                return -1;
+            }
+            b = xml[position];
+            if (b == '?') {
+                if (!skipProcessingInstruction()) {
+                    return -1;
+                }
+            } else if (b == '!') {
+                if (startsWith("!--")) {
+                    // The parser rejects "--" within a comment
+                    position += 3;
+                    if (!skipUntil("--") || position >= length || xml[position] != '>') {
+                        return -1;
+                    }
+                    position++;
+                } else if (startsWith("![CDATA[") && depth > 0) {
+                    if (!skipUntil("]]>")) {
+                        return -1;
+                    }
+                } else {
+                    // A doctype declaration (or a CDATA section outside of the root element)
+                    return -1;
+                }
+            } else if (b == '/') {
+                position++;
+                if (depth == 0 || !endTag()) {
+                    return -1;
+                }
+                depth--;
+                path.setLength(pathLengths[depth]);
+                closeNamespaces(depth);
+                rootClosed = depth == 0;
+            } else {
+                if (rootClosed || !startTag(nodePaths)) {
+                    return -1;
+                }
+                // An empty root element closes the document as well
+                rootClosed = depth == 0;
+            }
+        }
+
+        if (!rootClosed || depth != 0) {
+            return -1;
+        }
+        for (Map.Entry<String, Integer> nodePath : nodePaths.entrySet()) {
+            target.merge(nodePath.getKey(), nodePath.getValue(), Integer::sum);
+        }
+        return nodes;
+    }
+
+    /**
+     * Reads a start tag (after the '&lt;') with its attributes, adds its node paths and opens the element unless the tag is empty.
+     *
+     * @return false if the tag is malformed
+     */
+    private boolean startTag(Map<String, Integer> nodePaths) {
+        int nameStart = position;
+        int nameEnd = scanName();
+        if (nameEnd == nameStart) {
+            return false;
+        }
+
+        // Read the attributes up to the end of the tag
+        int attributeCount = 0;
+        boolean empty;
+        while (true) {
+            boolean separated = skipWhitespace();
+            if (position >= length) {
+                return false;
+            }
+            byte b = xml[position];
+            if (b == '>') {
+                position++;
+                empty = false;
+                break;
+            }
+            if (b == '/') {
+                if (position + 1 >= length || xml[position + 1] != '>') {
+                    return false;
+                }
+                position += 2;
+                empty = true;
+                break;
+            }
+
+            // An attribute: name = "value"
+            int attributeStart = position;
+            int attributeEnd = scanName();
+            if (!separated || attributeEnd == attributeStart || isDuplicateAttribute(attributeCount, attributeStart, attributeEnd - attributeStart)) {
+                return false;
+            }
+            skipWhitespace();
+            if (position >= length || xml[position] != '=') {
+                return false;
+            }
+            position++;
+            skipWhitespace();
+            if (position >= length || (xml[position] != '"' && xml[position] != '\'')) {
+                return false;
+            }
+            byte quote = xml[position++];
+            while (position < length && xml[position] != quote) {
+                if (xml[position] == '<' || (xml[position] == '&' && !skipReference())) {
+                    return false;
+                }
+                position++;
+            }
+            if (position >= length) {
+                return false;
+            }
+            if (attributeCount == attributeStarts.length) {
+                attributeStarts = Arrays.copyOf(attributeStarts, attributeCount * 2);
+                attributeLengths = Arrays.copyOf(attributeLengths, attributeCount * 2);
+            }
+            attributeStarts[attributeCount] = attributeStart;
+            attributeLengths[attributeCount] = attributeEnd - attributeStart;
+            attributeCount++;
+            position++;
+        }
+
+        // The namespace declarations of the tag are in scope for its own names already, the parser rejects undeclared prefixes
+        declareNamespaces(attributeCount);
+        if (!isPrefixDeclared(nameStart, nameEnd - nameStart)) {
+            return false;
+        }
+
+        int parentLength = path.length();
+        path.append('/').append(localName(nameStart, nameEnd));
+        String elementPath = path.toString();
+        nodePaths.merge(elementPath, 1, Integer::sum);
+        nodes++;
+
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = new String(xml, attributeStarts[i], attributeLengths[i], StandardCharsets.UTF_8);
+            if (!attributeName.equals("xmlns") && !attributeName.startsWith("xmlns:") && !isPrefixDeclared(attributeStarts[i], attributeLengths[i])) {
+                return false;
+            }
+            if (!XMLSchemaUtils.isNamespaceAttribute(attributeName)) {
+                nodePaths.merge(elementPath + "/" + XMLSchemaBitmapBuilder.attributePrefix + attributeName.substring(attributeName.lastIndexOf(":") + 1), 1, Integer::sum);
+                nodes++;
+            }
+        }
+
+        if (empty) {
+            path.setLength(parentLength);
+            closeNamespaces(depth);
+        } else {
+            open(parentLength, nameStart, nameEnd - nameStart);
+        }
+        return true;
+    }
+
+    /**
+     * Declares the namespace prefixes (xmlns:prefix) of the current tag for the element about to be opened.
+     */
+    private void declareNamespaces(int attributeCount) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeLengths[i] > 6 && startsWith(attributeStarts[i], "xmlns:")) {
+                if (prefixCount == prefixes.length) {
+                    prefixes = Arrays.copyOf(prefixes, prefixCount * 2);
+                    prefixLevels = Arrays.copyOf(prefixLevels, prefixCount * 2);
+                }
+                prefixes[prefixCount] = new String(xml, attributeStarts[i] + 6, attributeLengths[i] - 6, StandardCharsets.UTF_8);
+                prefixLevels[prefixCount] = depth + 1;
+                prefixCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes the namespace prefixes declared by elements deeper than the given depth.
+     */
+    private void closeNamespaces(int toDepth) {
+        while (prefixCount > 0 && prefixLevels[prefixCount - 1] > toDepth) {
+            prefixCount--;
+        }
+    }
+
+    /**
+     * @return true if the qualified name has no prefix or its prefix is xml or declared by the current or an enclosing element
+     */
+    private boolean isPrefixDeclared(int nameStart, int nameLength) {
+        int colon = -1;
+        for (int i = nameStart; i < nameStart + nameLength; i++) {
+            if (xml[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon < 0) {
+            return true;
+        }
+        String prefix = new String(xml, nameStart, colon - nameStart, StandardCharsets.UTF_8);
+        if (prefix.equals("xml")) {
+            return true;
+        }
+        for (int i = prefixCount - 1; i >= 0; i--) {
+            if (prefixes[i].equals(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads an end tag (after the '&lt;/'), its name must be the one of the innermost open element.
+     *
+     * @return false if the tag is malformed
+     */
+    private boolean endTag() {
+        int nameStart = position;
+        int nameEnd = scanName();
+        int openStart = nameStarts[depth - 1];
+        int openLength = nameLengths[depth - 1];
+        if (nameEnd - nameStart != openLength || !Arrays.equals(xml, nameStart, nameEnd, xml, openStart, openStart + openLength)) {
+            return false;
+        }
+        skipWhitespace();
+        if (position >= length || xml[position] != '>') {
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    /**
+     * @return true if the attribute name was already given in the current tag, which the parser rejects
+     */
+    private boolean isDuplicateAttribute(int attributeCount, int attributeStart, int attributeLength) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeLengths[i] == attributeLength && Arrays.equals(xml, attributeStarts[i], attributeStarts[i] + attributeLength, xml, attributeStart, attributeStart + attributeLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void open(int parentLength, int nameStart, int nameLength) {
+        if (depth == pathLengths.length) {
+            pathLengths = Arrays.copyOf(pathLengths, depth * 2);
+            nameStarts = Arrays.copyOf(nameStarts, depth * 2);
+            nameLengths = Arrays.copyOf(nameLengths, depth * 2);
+        }
+        pathLengths[depth] = parentLength;
+        nameStarts[depth] = nameStart;
+        nameLengths[depth] = nameLength;
+        depth++;
+    }
+
+    /**
+     * @return the end of the name starting at the current position, the position is moved there
+     */
+    private int scanName() {
+        while (position < length) {
+            byte b = xml[position];
+            if (isWhitespace(b) || b == '>' || b == '/' || b == '=' || b == '<' || b == '"' || b == '\'') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private String localName(int nameStart, int nameEnd) {
+        int localStart = nameStart;
+        for (int i = nameStart; i < nameEnd; i++) {
+            if (xml[i] == ':') {
+                localStart = i + 1;
+            }
+        }
+        return new String(xml, localStart, nameEnd - localStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips a processing instruction or the xml declaration, the latter must not declare another encoding than UTF-8 (or ASCII).
+     */
+    private boolean skipProcessingInstruction() {
+        int start = position;
+        if (!skipUntil("?>")) {
+            return false;
+        }
+        String instruction = new String(xml, start, position - start, StandardCharsets.ISO_8859_1);
+        if (instruction.startsWith("?xml") && instruction.length() > 4 && isWhitespace((byte) instruction.charAt(4))) {
+            // The xml declaration may only start the document
+            if (start - 1 != documentStart) {
+                return false;
+            }
+            int encoding = instruction.indexOf("encoding");
+            if (encoding >= 0) {
+                String declared = instruction.substring(encoding + "encoding".length()).replaceAll("^\\s*=\\s*['\"]([^'\"]*)['\"][\\s\\S]*$", "$1").trim();
+                return declared.equalsIgnoreCase("UTF-8") || declared.equalsIgnoreCase("UTF8") || declared.equalsIgnoreCase("US-ASCII") || declared.equalsIgnoreCase("ASCII");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips a reference (at the '&amp;'), only character references and the predefined entities are known without a doctype declaration.
+     */
+    private boolean skipReference() {
+        int end = position + 1;
+        while (end < length && end - position <= 32 && xml[end] != ';') {
+            end++;
+        }
+        if (end >= length || xml[end] != ';') {
+            return false;
+        }
+        String reference = new String(xml, position + 1, end - position - 1, StandardCharsets.ISO_8859_1);
+        if (!(reference.equals("lt") || reference.equals("gt") || reference.equals("amp") || reference.equals("quot") || reference.equals("apos")
+            || reference.matches("#[0-9]+|#x[0-9a-fA-F]+"))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    /**
+     * Moves the position behind the next occurrence of the given ASCII string.
+     *
+     * @return false if the document ends before
+     */
+    private boolean skipUntil(String end) {
+        byte first = (byte) end.charAt(0);
+        for (int i = position; i <= length - end.length(); i++) {
+            if (xml[i] == first && startsWith(i, end)) {
+                position = i + end.length();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean startsWith(String prefix) {
+        return startsWith(position, prefix);
+    }
+
+    private boolean startsWith(int offset, String prefix) {
+        if (offset + prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (xml[offset + i] != (byte) prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean skipWhitespace() {
+        int start = position;
+        while (position < length && isWhitespace(xml[position])) {
+            position++;
+        }
+        return position > start;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -1,15 +1,22 @@
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.zip.CRC32;
 import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.ws.commons.schema.XmlSchema;
 import org.apache.ws.commons.schema.XmlSchemaCollection;
 import org.apache.ws.commons.schema.XmlSchemaObject;
@@ -50,12 +57,22 @@ public final class XMLSchemaUtils {
      * @throws FileNotFoundException
      */
     public static List<XmlSchemaObject> getSchemaItems(File rootFile, String folderName) throws FileNotFoundException {
+        // Get all items
+        return getSchema(rootFile, folderName).getItems();
+    }
+
+    /**
+     * This auxiliary method reads the xml/xsd schema in the given xml/xsd file and folder, including its includes and imports, into a new schema collection.
+     *
+     * @param rootFile the file to open and get the schema out of
+     * @param folderName the base folder containing the given xsd/xml file
+     * @return the schema, its schema collection is available via getParent()
+     * @throws FileNotFoundException
+     */
+    public static XmlSchema getSchema(File rootFile, String folderName) throws FileNotFoundException {
         XmlSchemaCollection schemaCollection = new XmlSchemaCollection();
         schemaCollection.setBaseUri(folderName);
-        XmlSchema schema = schemaCollection.read(new StreamSource(new FileInputStream(rootFile)));
-
-        // Get all items
-        return schema.getItems();
+        return schemaCollection.read(new StreamSource(new FileInputStream(rootFile)));
     }
 
     /**
@@ -99,6 +116,37 @@ public final class XMLSchemaUtils {
         return false;
     }
 
+    /**
+     * Namespace declarations and schema instance attributes (e.g. xsi:schemaLocation) are attributes of the parsed document but not of the schema.
+     *
+     * @param attributeName the qualified name of an xml attribute
+     * @return true if the attribute is not defined by the schema
+     */
+    public static boolean isNamespaceAttribute(String attributeName) {
+        return attributeName.equals("xmlns") || attributeName.startsWith("xmlns:") || attributeName.startsWith("xsi:");
+    }
+
+    /**
+     * This method deterministically assigns an example file to one of shardCount shards.
+     * <p>
+     * The assignment only depends on the file's path relative to the example folder, thus, every process (or CI node) scanning the same example folder agrees on it, regardless of where the
+     * folder is mounted.
+     *
+     * @param rootPath the canonical path of the example folder
+     * @param canonicalPath the canonical path of the example file
+     * @param shardIndex the 1-based shard to check for
+     * @param shardCount the number of shards
+     * @return true if the file belongs to the given shard
+     */
+    public static boolean isInShard(String rootPath, String canonicalPath, int shardIndex, int shardCount) {
+        String relativePath = canonicalPath.startsWith(rootPath) ? canonicalPath.substring(rootPath.length()) : canonicalPath;
+        relativePath = FilenameUtils.separatorsToUnix(relativePath);
+
+        CRC32 crc = new CRC32();
+        crc.update(relativePath.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % shardCount == shardIndex - 1;
+    }
+
     /**
      * This code writes the output to the given path: col1: path, col2: schema type, col3: schema name, col4: references
      *
@@ -106,15 +154,83 @@ public final class XMLSchemaUtils {
      * @throws IOException
      */
     public static File printBitmapToCsv(String outputFilePath, Map<String, Map<String, Set<String>>> bitmap) throws IOException {
-        FileWriter csvFileWriter = new FileWriter(outputFilePath);
-		csvFileWriter.append("File;Type;Pseudo_path;Covering_examples\n");
+        return printBitmapToCsv(outputFilePath, bitmap, null, null);
+    }
+
+    /**
+     * This code writes the output to the given path: col1: path, col2: schema type, col3: schema name, col4: references, if occurrences are given also col5: number of occurrences, col6: the
+     * files with the most occurrences
+     *
+     * @param outputFilePath the path to the output file
+     * @param bitmap the bitmap to write
+     * @param pathIndex the index over the bitmap the occurrences are indexed by, may be null
+     * @param occurrences the occurrences per path id, may be null
+     * @throws IOException
+     */
+    public static File printBitmapToCsv(String outputFilePath, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathIndex pathIndex, XMLSchemaOccurrenceCounter occurrences)
+        throws IOException {
+        return printBitmapToCsv(outputFilePath, bitmap, pathIndex, occurrences, null);
+    }
+
+    /**
+     * Writes the output like {@link #printBitmapToCsv(String, Map, XMLSchemaPathIndex, XMLSchemaOccurrenceCounter)}, if a sampler is given with three more columns: the estimated share of
+     * files using the path and the bounds of its 95% interval.
+     *
+     * @param outputFilePath the path to the output file
+     * @param bitmap the bitmap to write
+     * @param pathIndex the index over the bitmap the occurrences and estimates are indexed by, may be null
+     * @param occurrences the occurrences per path id, may be null
+     * @param sampler the usage estimates per path id, may be null
+     * @throws IOException
+     */
+    public static File printBitmapToCsv(String outputFilePath, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathIndex pathIndex, XMLSchemaOccurrenceCounter occurrences,
+        XMLSchemaSampler sampler) throws IOException {
+        try (BufferedWriter csvFileWriter = new BufferedWriter(new FileWriter(outputFilePath))) {
+            writeBitmapCsv(csvFileWriter, bitmap, pathIndex, occurrences, sampler);
+        }
+
+        return new File(outputFilePath);
+    }
+
+    /**
+     * Writes the bitmap in the CSV format of {@link #printBitmapToCsv(String, Map, XMLSchemaPathIndex, XMLSchemaOccurrenceCounter)} to the given writer, e.g. the response of a snapshot
+     * request.
+     *
+     * @param csvFileWriter the writer to write to, it is not closed
+     * @param bitmap the bitmap to write
+     * @param pathIndex the index over the bitmap the occurrences are indexed by, may be null
+     * @param occurrences the occurrences per path id, may be null
+     * @throws IOException
+     */
+    public static void writeBitmapCsv(Writer csvFileWriter, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathIndex pathIndex, XMLSchemaOccurrenceCounter occurrences)
+        throws IOException {
+        writeBitmapCsv(csvFileWriter, bitmap, pathIndex, occurrences, null);
+    }
+
+    private static void writeBitmapCsv(Writer csvFileWriter, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathIndex pathIndex, XMLSchemaOccurrenceCounter occurrences,
+        XMLSchemaSampler sampler) throws IOException {
+        boolean withOccurrences = pathIndex != null && occurrences != null;
+        boolean withEstimates = pathIndex != null && sampler != null;
+        csvFileWriter.append(withOccurrences ? "File;Type;Pseudo_path;Covering_examples;Occurrences;Top_examples" : "File;Type;Pseudo_path;Covering_examples")
+            .append(withEstimates ? ";Estimated_usage;Usage_lower_95;Usage_upper_95\n" : "\n");
         for (Entry<String, Map<String, Set<String>>> entry : bitmap.entrySet()) {
             if (entry.getValue() != null) {
                 for (Entry<String, Set<String>> elementEntry : entry.getValue().entrySet()) {
                     csvFileWriter.append(entry.getKey()).append(File.pathSeparator).append("element").append(File.pathSeparator).append(elementEntry.getKey())
                         .append(File.pathSeparator)
-                        .append(elementEntry.getValue().toString())
-                        .append(System.lineSeparator());
+                        .append(elementEntry.getValue().toString());
+                    if (withOccurrences) {
+                        int pathId = pathIndex.getId(entry.getKey(), elementEntry.getKey());
+                        csvFileWriter.append(File.pathSeparator).append(String.valueOf(occurrences.getTotal(pathId))).append(File.pathSeparator)
+                            .append(occurrences.formatTopFiles(pathId));
+                    }
+                    if (withEstimates) {
+                        int pathId = pathIndex.getId(entry.getKey(), elementEntry.getKey());
+                        double[] interval = sampler.getInterval(pathId);
+                        csvFileWriter.append(File.pathSeparator).append(String.format(Locale.ROOT, "%.4f", sampler.getEstimate(pathId))).append(File.pathSeparator)
+                            .append(String.format(Locale.ROOT, "%.4f", interval[0])).append(File.pathSeparator).append(String.format(Locale.ROOT, "%.4f", interval[1]));
+                    }
+                    csvFileWriter.append(System.lineSeparator());
                 }
             } else {
                 csvFileWriter.append(entry.getKey()).append(File.pathSeparator).append("N/A").append(File.pathSeparator).append("N/A").append(File.pathSeparator)
@@ -122,6 +238,82 @@ public final class XMLSchemaUtils {
                     .append(System.lineSeparator());
             }
         }
+    }
+
+    /**
+     * This code writes the coverage kept in a coverage store to the given path, in the same format as {@link #printBitmapToCsv(String, Map, XMLSchemaPathIndex, XMLSchemaOccurrenceCounter)}.
+     * The rows are written in the order of the path ids while the spilled runs of the store are merged, thus, the covering examples of only one path are in memory at a time.
+     *
+     * @param outputFilePath the path to the output file
+     * @param bitmap the bitmap, only used for the files without xsd objects
+     * @param pathIndex the index over the bitmap the store is indexed by
+     * @param coverageStore the covering examples per path id
+     * @param occurrences the occurrences per path id, may be null
+     * @throws IOException
+     */
+    public static File printCoverageStoreToCsv(String outputFilePath, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathIndex pathIndex,
+        XMLSchemaCoverageStore coverageStore, XMLSchemaOccurrenceCounter occurrences) throws IOException {
+        try (BufferedWriter csvFileWriter = new BufferedWriter(new FileWriter(outputFilePath))) {
+            csvFileWriter.append(occurrences != null ? "File;Type;Pseudo_path;Covering_examples;Occurrences;Top_examples\n" : "File;Type;Pseudo_path;Covering_examples\n");
+            for (Entry<String, Map<String, Set<String>>> entry : bitmap.entrySet()) {
+                if (entry.getValue() == null) {
+                    csvFileWriter.append(entry.getKey()).append(File.pathSeparator).append("N/A").append(File.pathSeparator).append("N/A").append(File.pathSeparator)
+                        .append("N/A")
+                        .append(System.lineSeparator());
+                }
+            }
+
+            // The merge only yields covered paths, the uncovered ones in between are written with an empty list
+            int[] nextPathId = {0};
+            coverageStore.forEachPath((pathId, fileIds) -> {
+                while (nextPathId[0] < pathId) {
+                    appendCoverageStoreRow(csvFileWriter, pathIndex, nextPathId[0]++, new ArrayList<>(), occurrences);
+                }
+                List<String> coveringExamples = new ArrayList<>();
+                for (int fileId : fileIds) {
+                    coveringExamples.add(coverageStore.getFile(fileId));
+                }
+                appendCoverageStoreRow(csvFileWriter, pathIndex, nextPathId[0]++, coveringExamples, occurrences);
+            });
+            while (nextPathId[0] < pathIndex.size()) {
+                appendCoverageStoreRow(csvFileWriter, pathIndex, nextPathId[0]++, new ArrayList<>(), occurrences);
+            }
+        }
+
+        return new File(outputFilePath);
+    }
+
+    private static void appendCoverageStoreRow(BufferedWriter csvFileWriter, XMLSchemaPathIndex pathIndex, int pathId, List<String> coveringExamples,
+        XMLSchemaOccurrenceCounter occurrences) throws IOException {
+        csvFileWriter.append(pathIndex.getXsdFile(pathId)).append(File.pathSeparator).append("element").append(File.pathSeparator).append(pathIndex.getXsdPath(pathId))
+            .append(File.pathSeparator)
+            .append(coveringExamples.toString());
+        if (occurrences != null) {
+            csvFileWriter.append(File.pathSeparator).append(String.valueOf(occurrences.getTotal(pathId))).append(File.pathSeparator).append(occurrences.formatTopFiles(pathId));
+        }
+        csvFileWriter.append(System.lineSeparator());
+    }
+
+    /**
+     * This code writes the branch coverage to the given path: col1: xsd file, col2: element path, col3: branch (choice alternative or optional particle), col4: covering examples
+     *
+     * @param outputFilePath the path to the output file
+     * @param xsdFilePath the xsd file the paths are listed under
+     * @param branchCoverage element path -> (branch -> set of covering example files)
+     * @throws IOException
+     */
+    public static File printBranchesToCsv(String outputFilePath, String xsdFilePath, Map<String, Map<String, Set<String>>> branchCoverage) throws IOException {
+        try (BufferedWriter csvFileWriter = new BufferedWriter(new FileWriter(outputFilePath))) {
+            csvFileWriter.append("File;Pseudo_path;Branch;Covering_examples\n");
+            for (Entry<String, Map<String, Set<String>>> entry : branchCoverage.entrySet()) {
+                for (Entry<String, Set<String>> branchEntry : entry.getValue().entrySet()) {
+                    csvFileWriter.append(xsdFilePath).append(File.pathSeparator).append(entry.getKey()).append(File.pathSeparator).append(branchEntry.getKey())
+                        .append(File.pathSeparator)
+                        .append(branchEntry.getValue().toString())
+                        .append(System.lineSeparator());
+                }
+            }
+        }
 
         return new File(outputFilePath);
     }
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+
+/**
+ * The coverage of one further schema version checked in the same scan as the main schema, e.g. OJP 2.0 next to OJP 1.0 during a migration.
+ * <p>
+ * Each version has its own bitmap, path index and match cache (and occurrence counter), the examples are parsed once and their distinct node paths are fed to every version (see
+ * {@link #match(String, Map)}).
+ */
+public final class XMLSchemaVersionCoverage {
+
+    private final String name;
+    private final Map<String, Map<String, Set<String>>> bitmap;
+    private final XMLSchemaPathMatchCache matchCache;
+
+    // Occurrences per xsd path id, null unless occurrences are counted (--count)
+    private final XMLSchemaOccurrenceCounter occurrenceCounter;
+
+    private XMLSchemaVersionCoverage(String name, Map<String, Map<String, Set<String>>> bitmap, XMLSchemaPathMatchCache matchCache, XMLSchemaOccurrenceCounter occurrenceCounter) {
+        this.name = name;
+        this.bitmap = bitmap;
+        this.matchCache = matchCache;
+        this.occurrenceCounter = occurrenceCounter;
+    }
+
+    /**
+     * Loads a schema version as bitmap and compiles its matcher.
+     *
+     * @param name the name of the version, used for its output file
+     * @param folderName the folder of the xsds
+     * @param fileName the main xsd file
+     * @param compiled true to match with a {@link XMLSchemaCompiledMatcher}
+     * @param matchCacheSize the capacity of the match cache
+     * @param topK the number of examples with the most occurrences per path, 0 to not count occurrences
+     * @return the version with an empty coverage
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    public static XMLSchemaVersionCoverage load(String name, String folderName, String fileName, boolean compiled, int matchCacheSize, int topK) throws IOException, ConfigurationException {
+        System.out.println("Loading the XSDs of " + name + " into memory.");
+        Map<String, Map<String, Set<String>>> bitmap = XMLSchemaBitmapBuilder.loadXsdString(folderName, fileName, new HashMap<>());
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(bitmap, "/");
+        XMLSchemaCompiledMatcher compiledMatcher = compiled ? XMLSchemaCompiledMatcher.compile(pathIndex, "/") : null;
+        return new XMLSchemaVersionCoverage(name, bitmap, new XMLSchemaPathMatchCache(pathIndex, compiledMatcher, matchCacheSize),
+            topK > 0 ? new XMLSchemaOccurrenceCounter(topK) : null);
+    }
+
+    /**
+     * Credits an example to the paths of this version matched by its node paths.
+     *
+     * @param canonicalPath the path the example is reported with
+     * @param nodePaths the distinct node paths of the example with their number of nodes
+     */
+    public void match(String canonicalPath, Map<String, Integer> nodePaths) {
+        XMLSchemaPathIndex pathIndex = matchCache.getPathIndex();
+
+        // The occurrences of all node paths matching an xsd path are added at once
+        Map<Integer, Long> pathOccurrences = new HashMap<>();
+        for (Map.Entry<String, Integer> nodePath : nodePaths.entrySet()) {
+            for (int xsdPathId : matchCache.match(nodePath.getKey())) {
+                pathIndex.getCoverage(xsdPathId).add(canonicalPath);
+                if (occurrenceCounter != null && pathIndex.endsWith(xsdPathId, nodePath.getKey())) {
+                    pathOccurrences.merge(xsdPathId, (long) nodePath.getValue(), Long::sum);
+                }
+            }
+        }
+        if (occurrenceCounter != null) {
+            int fileId = occurrenceCounter.getFileId(canonicalPath);
+            for (Map.Entry<Integer, Long> pathOccurrence : pathOccurrences.entrySet()) {
+                occurrenceCounter.add(pathOccurrence.getKey(), fileId, pathOccurrence.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the coverage of this version in the CSV format of the checker.
+     *
+     * @param outputFilePath the CSV file
+     * @throws IOException
+     */
+    public void printToCsv(String outputFilePath) throws IOException {
+        XMLSchemaUtils.printBitmapToCsv(outputFilePath, bitmap, matchCache.getPathIndex(), occurrenceCounter);
+    }
+
+    /**
+     * @return the number of paths of this version covered by at least one example
+     */
+    public int getCoveredPaths() {
+        return matchCache.getPathIndex().getCoveredCount();
+    }
+
+    public int getPathCount() {
+        return matchCache.getPathIndex().size();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -104,6 +107,33 @@ public class XSDSchemaGraph {
         return clone;
     }
 
+    /**
+     * Follows the edges backwards, i.e., from an included or imported file to the files including or importing it.
+     *
+     * @param uniqueIds the vertices to start from
+     * @return the unique ids of the given vertices and all vertices that (directly or indirectly) depend on them
+     */
+    public Set<String> getDependents(Set<String> uniqueIds) {
+        Map<String, Set<String>> predecessors = new HashMap<>();
+        for (Map.Entry<XSDSchemaVertex, Set<XSDSchemaVertex>> vertex : vertices.entrySet()) {
+            for (XSDSchemaVertex successor : vertex.getValue()) {
+                predecessors.computeIfAbsent(successor.getUniqueId(), uniqueId -> new HashSet<>()).add(vertex.getKey().getUniqueId());
+            }
+        }
+
+        Set<String> dependents = new HashSet<>(uniqueIds);
+        Deque<String> toVisit = new ArrayDeque<>(uniqueIds);
+        while (!toVisit.isEmpty()) {
+            for (String predecessor : predecessors.getOrDefault(toVisit.pop(), Collections.emptySet())) {
+                if (dependents.add(predecessor)) {
+                    toVisit.push(predecessor);
+                }
+            }
+        }
+
+        return dependents;
+    }
+
     public Map<XSDSchemaVertex, Set<XSDSchemaVertex>> getVertices() {
         return vertices;
     }
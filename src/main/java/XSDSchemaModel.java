@@ -0,0 +1,658 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.namespace.QName;
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaAll;
+import org.apache.ws.commons.schema.XmlSchemaAllMember;
+import org.apache.ws.commons.schema.XmlSchemaAny;
+import org.apache.ws.commons.schema.XmlSchemaAttribute;
+import org.apache.ws.commons.schema.XmlSchemaAttributeGroup;
+import org.apache.ws.commons.schema.XmlSchemaAttributeGroupRef;
+import org.apache.ws.commons.schema.XmlSchemaAttributeOrGroupRef;
+import org.apache.ws.commons.schema.XmlSchemaChoice;
+import org.apache.ws.commons.schema.XmlSchemaChoiceMember;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.XmlSchemaComplexContentExtension;
+import org.apache.ws.commons.schema.XmlSchemaComplexContentRestriction;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.apache.ws.commons.schema.XmlSchemaContent;
+import org.apache.ws.commons.schema.XmlSchemaContentProcessing;
+import org.apache.ws.commons.schema.XmlSchemaElement;
+import org.apache.ws.commons.schema.XmlSchemaGroup;
+import org.apache.ws.commons.schema.XmlSchemaGroupRef;
+import org.apache.ws.commons.schema.XmlSchemaObject;
+import org.apache.ws.commons.schema.XmlSchemaParticle;
+import org.apache.ws.commons.schema.XmlSchemaSequence;
+import org.apache.ws.commons.schema.XmlSchemaSequenceMember;
+import org.apache.ws.commons.schema.XmlSchemaSimpleContentExtension;
+import org.apache.ws.commons.schema.XmlSchemaSimpleContentRestriction;
+import org.apache.ws.commons.schema.XmlSchemaType;
+
+/**
+ * The expanded schema held as a DAG of shared {@link XSDSchemaNode}s instead of a bitmap of all root-to-leaf paths.
+ * <p>
+ * The content of every complexType and group is built once and referenced by all elements using it, e.g., a named complexType used in 200 places exists once. Group references, extension base
+ * types and substitution groups are resolved directly via the schema collection, thus, no groupRef substitution rounds are needed. Flat paths are only produced when the coverage is written
+ * (see {@link XSDSchemaModelCoverage#toBitmap(String)}).
+ * <p>
+ * In lazy mode a type's content is only built when an example actually descends into an element of that type (see {@link #getChildElements(XSDSchemaNode)}). Types no example reaches are never
+ * expanded.
+ * <p>
+ * The analysis can be scoped to selected root elements and namespaces, then only the part of the schema reachable from those roots (within those namespaces) is ever built.
+ */
+public final class XSDSchemaModel {
+
+    private final XmlSchemaCollection schemaCollection;
+
+    // Whether type content is built on demand only
+    private final boolean lazy;
+
+    // The target namespaces of the elements to build, empty for all namespaces
+    private final Set<String> includedNamespaces;
+
+    // The type nodes whose content has not been built yet (lazy mode only)
+    private final Map<XSDSchemaNode, XmlSchemaComplexType> unexpandedTypes = new HashMap<>();
+
+    // The global elements an example document may start with
+    private final Map<String, XSDSchemaNode> rootElements = new LinkedHashMap<>();
+
+    // The global elements by QName, e.g. for elements matched by a wildcard: the root elements and the other global elements once used (null if not declared)
+    private final Map<QName, XSDSchemaNode> globalElements = new HashMap<>();
+
+    // Memo of the type and group nodes, keyed by the schema object, so that each is built once
+    private final Map<XmlSchemaType, XSDSchemaNode> typeNodes = new IdentityHashMap<>();
+    private final Map<QName, XSDSchemaNode> groupNodes = new HashMap<>();
+
+    // substitutionGroup head -> elements that may substitute it
+    private final Map<QName, List<XmlSchemaElement>> substitutes = new HashMap<>();
+
+    // Memo of the child elements (by local name) of every type node
+    private final Map<XSDSchemaNode, Map<String, XSDSchemaNode>> childElements = new HashMap<>();
+
+    // Memo of the wildcards of every type node with the branches leading to them
+    private final Map<XSDSchemaNode, Map<XSDSchemaNode, XSDSchemaNode[]>> wildcards = new HashMap<>();
+
+    // Memo of the attributes (by local name) of every type node
+    private final Map<XSDSchemaNode, Map<String, XSDSchemaNode>> attributes = new HashMap<>();
+
+    // Memo of the branches of every type node: branch -> description, and child element (by local name) -> branches it lies on
+    private final Map<XSDSchemaNode, Map<XSDSchemaNode, String>> branches = new HashMap<>();
+    private final Map<XSDSchemaNode, Map<String, XSDSchemaNode[]>> childBranches = new HashMap<>();
+
+    private int nodeCount = 0;
+
+    private XSDSchemaModel(XmlSchemaCollection schemaCollection, boolean lazy, Set<String> includedNamespaces) {
+        this.schemaCollection = schemaCollection;
+        this.lazy = lazy;
+        this.includedNamespaces = includedNamespaces;
+    }
+
+    /**
+     * Loads the main schema (and all included and imported schemas) and builds the model, starting at the global elements of the main schema.
+     *
+     * @param folderName the folder containing the main schema
+     * @param fileName the main schema file
+     * @param lazy if true the content of types is only built when the examples need it
+     * @return the model
+     * @throws FileNotFoundException
+     */
+    public static XSDSchemaModel load(String folderName, String fileName, boolean lazy) throws FileNotFoundException {
+        return load(folderName, fileName, lazy, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * Loads the main schema (and all included and imported schemas) and builds the model, starting at the given global elements only. Elements of other namespaces than the included ones are
+     * left out, so are the schemas only they reference.
+     *
+     * @param folderName the folder containing the main schema
+     * @param fileName the main schema file
+     * @param lazy if true the content of types is only built when the examples need it
+     * @param rootElementNames the global elements to start at, by local name or as {namespace}name, if empty the global elements of the main schema
+     * @param includedNamespaces the target namespaces of the elements to include, if empty all
+     * @return the model
+     * @throws FileNotFoundException
+     */
+    public static XSDSchemaModel load(String folderName, String fileName, boolean lazy, Set<String> rootElementNames, Set<String> includedNamespaces) throws FileNotFoundException {
+        XmlSchema mainSchema = XMLSchemaUtils.getSchema(XMLSchemaUtils.openFileOrFolder(folderName, fileName), folderName);
+        XSDSchemaModel model = new XSDSchemaModel(mainSchema.getParent(), lazy, includedNamespaces);
+
+        // Gather the substitution groups of all schemas first, they are needed while building the elements
+        for (XmlSchema schema : model.schemaCollection.getXmlSchemas()) {
+            for (XmlSchemaElement schemaElement : schema.getElements().values()) {
+                if (schemaElement.getSubstitutionGroup() != null) {
+                    model.substitutes.computeIfAbsent(schemaElement.getSubstitutionGroup(), head -> new ArrayList<>()).add(schemaElement);
+                }
+            }
+        }
+
+        List<XmlSchemaElement> globalElements = new ArrayList<>();
+        if (!rootElementNames.isEmpty()) {
+            // The selected roots may be declared in any of the schemas
+            Set<String> missingRootElementNames = new HashSet<>(rootElementNames);
+            for (XmlSchema schema : model.schemaCollection.getXmlSchemas()) {
+                for (XmlSchemaElement schemaElement : schema.getElements().values()) {
+                    if (rootElementNames.contains(schemaElement.getName()) || rootElementNames.contains(schemaElement.getQName().toString())) {
+                        globalElements.add(schemaElement);
+                        missingRootElementNames.remove(schemaElement.getName());
+                        missingRootElementNames.remove(schemaElement.getQName().toString());
+                    }
+                }
+            }
+            if (!missingRootElementNames.isEmpty()) {
+                System.out.println("XSDSchemaModel: " + "root elements not found: " + missingRootElementNames);
+            }
+        } else {
+            // The roots are the global elements of the main schema, if it only includes others we take all global elements
+            globalElements.addAll(mainSchema.getElements().values());
+            if (globalElements.isEmpty()) {
+                for (XmlSchema schema : model.schemaCollection.getXmlSchemas()) {
+                    globalElements.addAll(schema.getElements().values());
+                }
+            }
+        }
+
+        for (XmlSchemaElement globalElement : globalElements) {
+            if (!model.rootElements.containsKey(globalElement.getName())) {
+                XSDSchemaNode rootElement = model.buildElement(globalElement, globalElement);
+                if (rootElement != null) {
+                    model.rootElements.put(globalElement.getName(), rootElement);
+                    model.globalElements.put(globalElement.getQName(), rootElement);
+                }
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * @param name the local name of an example's root element
+     * @return the matching root element node or null if the schema does not define it as root
+     */
+    public XSDSchemaNode getRootElement(String name) {
+        return rootElements.get(name);
+    }
+
+    /**
+     * Returns the node of a global element declaration of any of the schemas, also of those not analysed as root (see {@link #load(String, String, boolean, Set, Set)}). Root elements are
+     * returned as such, the other global elements are built on first use.
+     *
+     * @param qName the qualified name of the element
+     * @return the element node or null if no global element of that name is declared (or its namespace is not included)
+     */
+    public XSDSchemaNode getGlobalElement(QName qName) {
+        if (!globalElements.containsKey(qName)) {
+            XmlSchemaElement schemaElement = schemaCollection.getElementByQName(qName);
+            globalElements.put(qName, schemaElement == null ? null : buildElement(schemaElement, schemaElement));
+        }
+        return globalElements.get(qName);
+    }
+
+    public List<XSDSchemaNode> getRootElements() {
+        return new ArrayList<>(rootElements.values());
+    }
+
+    /**
+     * @param element an element node
+     * @return the content type node of the element or null if the element has simple content
+     */
+    public XSDSchemaNode getContent(XSDSchemaNode element) {
+        return element.getChildren().isEmpty() ? null : element.getChildren().get(0);
+    }
+
+    /**
+     * Returns the elements which may occur as children of the given element, i.e., all elements reachable through the element's type, its base types, groups, sequences and choices. The map is
+     * computed once per type and shared by all elements of that type. In lazy mode this expands the type (and its base types) if needed.
+     *
+     * @param element an element node
+     * @return the child element nodes by local name (first declaration wins)
+     */
+    public Map<String, XSDSchemaNode> getChildElements(XSDSchemaNode element) {
+        XSDSchemaNode content = getContent(element);
+        if (content == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, XSDSchemaNode> children = childElements.get(content);
+        if (children == null) {
+            children = new LinkedHashMap<>();
+            Map<XSDSchemaNode, String> contentBranches = new LinkedHashMap<>();
+            Map<String, XSDSchemaNode[]> contentChildBranches = new HashMap<>();
+            Map<XSDSchemaNode, XSDSchemaNode[]> contentWildcards = new LinkedHashMap<>();
+            gatherChildElements(content, children, new HashSet<>(), new ArrayList<>(), contentBranches, contentChildBranches, contentWildcards);
+            childElements.put(content, children);
+            branches.put(content, contentBranches);
+            childBranches.put(content, contentChildBranches);
+            wildcards.put(content, contentWildcards);
+        }
+        return children;
+    }
+
+    /**
+     * Returns the wildcards (xs:any) of the given element's content, they match child elements not declared by name.
+     *
+     * @param element an element node
+     * @return the wildcard nodes, in schema order, with the branches (see {@link #getBranches(XSDSchemaNode)}) they lie on
+     */
+    public Map<XSDSchemaNode, XSDSchemaNode[]> getWildcards(XSDSchemaNode element) {
+        getChildElements(element);
+        XSDSchemaNode content = getContent(element);
+        return content == null ? Collections.emptyMap() : wildcards.get(content);
+    }
+
+    /**
+     * Returns the attributes of the given element, including those of its base types and attribute groups. In lazy mode this expands the type (and its base types) if needed.
+     *
+     * @param element an element node
+     * @return the attribute nodes by local name
+     */
+    public Map<String, XSDSchemaNode> getAttributes(XSDSchemaNode element) {
+        XSDSchemaNode content = getContent(element);
+        if (content == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, XSDSchemaNode> contentAttributes = attributes.get(content);
+        if (contentAttributes == null) {
+            contentAttributes = new LinkedHashMap<>();
+            gatherAttributes(content, contentAttributes, new HashSet<>());
+            attributes.put(content, contentAttributes);
+        }
+        return contentAttributes;
+    }
+
+    /**
+     * Returns the branches of the given element's content, i.e., the alternatives of its choices and its optional (minOccurs=0) particles. A branch is exercised if any child element on it
+     * occurs.
+     *
+     * @param element an element node
+     * @return the branch nodes with a description, in schema order
+     */
+    public Map<XSDSchemaNode, String> getBranches(XSDSchemaNode element) {
+        getChildElements(element);
+        XSDSchemaNode content = getContent(element);
+        return content == null ? Collections.emptyMap() : branches.get(content);
+    }
+
+    /**
+     * @param element an element node
+     * @param childName the local name of a child element (see {@link #getChildElements(XSDSchemaNode)})
+     * @return the branches (see {@link #getBranches(XSDSchemaNode)}) the child element lies on, outermost first
+     */
+    public XSDSchemaNode[] getChildBranches(XSDSchemaNode element, String childName) {
+        getChildElements(element);
+        XSDSchemaNode content = getContent(element);
+        XSDSchemaNode[] elementBranches = content == null ? null : childBranches.get(content).get(childName);
+        return elementBranches == null ? new XSDSchemaNode[0] : elementBranches;
+    }
+
+    /**
+     * @param type a type node
+     * @return false if the type's content was never built, because no example needed it (lazy mode only)
+     */
+    public boolean isExpanded(XSDSchemaNode type) {
+        return !unexpandedTypes.containsKey(type);
+    }
+
+    public int getUnexpandedTypeCount() {
+        return unexpandedTypes.size();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Collects the child elements below the given node together with the branches (choice alternatives and optional particles) leading to them. The nodes on the current path are kept in
+     * visited only to stop on recursive groups, a group used in several places is walked at each of them.
+     */
+    private void gatherChildElements(XSDSchemaNode node, Map<String, XSDSchemaNode> children, Set<XSDSchemaNode> visited, List<XSDSchemaNode> branchPath,
+        Map<XSDSchemaNode, String> contentBranches, Map<String, XSDSchemaNode[]> contentChildBranches, Map<XSDSchemaNode, XSDSchemaNode[]> contentWildcards) {
+        if (!visited.add(node)) {
+            return;
+        }
+
+        XmlSchemaComplexType unexpandedType = unexpandedTypes.remove(node);
+        if (unexpandedType != null) {
+            expandType(node, unexpandedType);
+        }
+
+        for (XSDSchemaNode child : node.getChildren()) {
+            if (child.getKind() == XSDSchemaNode.Kind.ATTRIBUTE) {
+                continue;
+            }
+
+            boolean branch = node.getKind() == XSDSchemaNode.Kind.CHOICE || child.getMinOccurs() == 0;
+            if (branch) {
+                contentBranches.put(child, (node.getKind() == XSDSchemaNode.Kind.CHOICE ? "choice alternative " : "optional ") + describeParticle(child));
+                branchPath.add(child);
+            }
+
+            if (child.getKind() == XSDSchemaNode.Kind.ELEMENT) {
+                if (children.putIfAbsent(child.getName(), child) == null) {
+                    contentChildBranches.put(child.getName(), branchPath.toArray(new XSDSchemaNode[0]));
+                }
+            } else if (child.getKind() == XSDSchemaNode.Kind.ANY) {
+                contentWildcards.putIfAbsent(child, branchPath.toArray(new XSDSchemaNode[0]));
+            } else {
+                gatherChildElements(child, children, visited, branchPath, contentBranches, contentChildBranches, contentWildcards);
+            }
+
+            if (branch) {
+                branchPath.remove(branchPath.size() - 1);
+            }
+        }
+        visited.remove(node);
+    }
+
+    /**
+     * Collects the attributes of a type node and its base types, the attributes are direct children of the type nodes.
+     */
+    private void gatherAttributes(XSDSchemaNode type, Map<String, XSDSchemaNode> contentAttributes, Set<XSDSchemaNode> visited) {
+        if (!visited.add(type)) {
+            return;
+        }
+
+        XmlSchemaComplexType unexpandedType = unexpandedTypes.remove(type);
+        if (unexpandedType != null) {
+            expandType(type, unexpandedType);
+        }
+
+        for (XSDSchemaNode child : type.getChildren()) {
+            if (child.getKind() == XSDSchemaNode.Kind.ATTRIBUTE) {
+                contentAttributes.putIfAbsent(child.getName(), child);
+            } else if (child.getKind() == XSDSchemaNode.Kind.TYPE) {
+                gatherAttributes(child, contentAttributes, visited);
+            }
+        }
+    }
+
+    /**
+     * @return e.g. "element Name", "group ServiceGroup", "any ##other" or "sequence(Name, PlaceRef)"
+     */
+    private String describeParticle(XSDSchemaNode node) {
+        if (node.getKind() == XSDSchemaNode.Kind.ANY) {
+            return "any " + node.getNamespaceConstraint();
+        }
+        if (node.getKind() == XSDSchemaNode.Kind.ELEMENT || node.getKind() == XSDSchemaNode.Kind.GROUP) {
+            return node.getKind().name().toLowerCase() + " " + node.getName();
+        }
+
+        StringBuilder description = new StringBuilder(node.getKind().name().toLowerCase()).append("(");
+        for (int i = 0; i < node.getChildren().size(); i++) {
+            XSDSchemaNode child = node.getChildren().get(i);
+            description.append(i > 0 ? ", " : "").append(child.getName() != null ? child.getName() : child.getKind().name().toLowerCase());
+        }
+        return description.append(")").toString();
+    }
+
+    private XSDSchemaNode newNode(XSDSchemaNode.Kind kind, QName qName, XmlSchemaParticle particle) {
+        XSDSchemaNode node = new XSDSchemaNode(nodeCount++, kind, qName);
+        if (particle != null) {
+            node.setMinOccurs(particle.getMinOccurs());
+            node.setMaxOccurs(particle.getMaxOccurs());
+        }
+        return node;
+    }
+
+    /**
+     * Builds the node of an element (or element ref). A ref to the head of a substitution group becomes a choice of the head and all its substitutes.
+     *
+     * @param schemaElement the element declaration
+     * @param particle the particle carrying the occurrence constraints
+     * @return the node or null if the element is not in an included namespace
+     */
+    private XSDSchemaNode buildElement(XmlSchemaElement schemaElement, XmlSchemaParticle particle) {
+        if (schemaElement.isRef()) {
+            XmlSchemaElement target = schemaElement.getRef().getTarget();
+            if (target == null) {
+                System.out.println("XSDSchemaModel: " + "unresolved element ref: " + schemaElement.getRef().getTargetQName());
+                return newNode(XSDSchemaNode.Kind.ELEMENT, schemaElement.getRef().getTargetQName(), particle);
+            }
+
+            if (substitutes.containsKey(target.getQName())) {
+                XSDSchemaNode choice = newNode(XSDSchemaNode.Kind.CHOICE, null, particle);
+                addSubstitutionAlternatives(choice, target, new HashSet<>());
+                return choice;
+            }
+            return buildElement(target, particle);
+        }
+
+        if (!isIncluded(schemaElement)) {
+            return null;
+        }
+
+        XSDSchemaNode element = newNode(XSDSchemaNode.Kind.ELEMENT, schemaElement.getQName(), particle);
+        XSDSchemaNode content = buildElementContent(schemaElement);
+        if (content != null) {
+            element.getChildren().add(content);
+        }
+        return element;
+    }
+
+    private void addSubstitutionAlternatives(XSDSchemaNode choice, XmlSchemaElement head, Set<QName> visited) {
+        if (!visited.add(head.getQName())) {
+            return;
+        }
+
+        if (!head.isAbstract() && isIncluded(head)) {
+            XSDSchemaNode element = newNode(XSDSchemaNode.Kind.ELEMENT, head.getQName(), null);
+            XSDSchemaNode content = buildElementContent(head);
+            if (content != null) {
+                element.getChildren().add(content);
+            }
+            choice.getChildren().add(element);
+        }
+        for (XmlSchemaElement substitute : substitutes.getOrDefault(head.getQName(), Collections.emptyList())) {
+            addSubstitutionAlternatives(choice, substitute, visited);
+        }
+    }
+
+    /**
+     * @param schemaElement an element declaration
+     * @return true if the target namespace of the schema declaring the element is included
+     */
+    private boolean isIncluded(XmlSchemaElement schemaElement) {
+        if (includedNamespaces.isEmpty()) {
+            return true;
+        }
+
+        String namespace = schemaElement.getParent() != null ? schemaElement.getParent().getTargetNamespace() : schemaElement.getQName().getNamespaceURI();
+        return includedNamespaces.contains(namespace == null ? "" : namespace);
+    }
+
+    private XSDSchemaNode buildElementContent(XmlSchemaElement schemaElement) {
+        XmlSchemaType schemaType = schemaElement.getSchemaType();
+        if (schemaType == null && schemaElement.getSchemaTypeName() != null) {
+            schemaType = schemaCollection.getTypeByQName(schemaElement.getSchemaTypeName());
+        }
+
+        if (schemaType instanceof XmlSchemaComplexType) {
+            return buildType((XmlSchemaComplexType) schemaType);
+        }
+        // simpleTypes are leaves
+        return null;
+    }
+
+    /**
+     * Builds (once) the node of a complexType. In lazy mode only the node is created, its content is built on first use.
+     *
+     * @param schemaComplexType the complexType
+     * @return the shared type node
+     */
+    private XSDSchemaNode buildType(XmlSchemaComplexType schemaComplexType) {
+        XSDSchemaNode type = typeNodes.get(schemaComplexType);
+        if (type != null) {
+            return type;
+        }
+
+        // Register the node before building the content, recursive types then point back to it
+        type = newNode(XSDSchemaNode.Kind.TYPE, schemaComplexType.getQName(), null);
+        typeNodes.put(schemaComplexType, type);
+
+        if (lazy) {
+            unexpandedTypes.put(type, schemaComplexType);
+        } else {
+            expandType(type, schemaComplexType);
+        }
+        return type;
+    }
+
+    /**
+     * Builds the content of a complexType: its base type (for extensions) followed by its own particle and its attributes.
+     *
+     * @param type the type node to build the content for
+     * @param schemaComplexType the complexType
+     */
+    private void expandType(XSDSchemaNode type, XmlSchemaComplexType schemaComplexType) {
+        XmlSchemaParticle particle = schemaComplexType.getParticle();
+        List<XmlSchemaAttributeOrGroupRef> schemaAttributes = schemaComplexType.getAttributes();
+        if (schemaComplexType.getContentModel() != null) {
+            XmlSchemaContent schemaContent = schemaComplexType.getContentModel().getContent();
+            QName baseTypeName = null;
+            particle = null;
+
+            if (schemaContent instanceof XmlSchemaComplexContentExtension) {
+                baseTypeName = ((XmlSchemaComplexContentExtension) schemaContent).getBaseTypeName();
+                particle = ((XmlSchemaComplexContentExtension) schemaContent).getParticle();
+                schemaAttributes = ((XmlSchemaComplexContentExtension) schemaContent).getAttributes();
+            } else if (schemaContent instanceof XmlSchemaSimpleContentExtension) {
+                baseTypeName = ((XmlSchemaSimpleContentExtension) schemaContent).getBaseTypeName();
+                schemaAttributes = ((XmlSchemaSimpleContentExtension) schemaContent).getAttributes();
+            } else if (schemaContent instanceof XmlSchemaComplexContentRestriction) {
+                // A restriction repeats the content it keeps from the base type
+                particle = ((XmlSchemaComplexContentRestriction) schemaContent).getParticle();
+                schemaAttributes = ((XmlSchemaComplexContentRestriction) schemaContent).getAttributes();
+            } else if (schemaContent instanceof XmlSchemaSimpleContentRestriction) {
+                schemaAttributes = ((XmlSchemaSimpleContentRestriction) schemaContent).getAttributes();
+            }
+
+            if (baseTypeName != null) {
+                XmlSchemaType baseType = schemaCollection.getTypeByQName(baseTypeName);
+                if (baseType instanceof XmlSchemaComplexType) {
+                    type.getChildren().add(buildType((XmlSchemaComplexType) baseType));
+                }
+            }
+        }
+
+        XSDSchemaNode particleNode = buildParticle(particle);
+        if (particleNode != null) {
+            type.getChildren().add(particleNode);
+        }
+        addAttributes(type, schemaAttributes, new HashSet<>());
+    }
+
+    /**
+     * Adds attribute nodes for the given attributes to the type node, attribute refs and attribute group refs are resolved.
+     */
+    private void addAttributes(XSDSchemaNode type, List<?> schemaAttributes, Set<XmlSchemaAttributeGroup> visitedGroups) {
+        if (schemaAttributes == null) {
+            return;
+        }
+
+        for (Object schemaAttribute : schemaAttributes) {
+            if (schemaAttribute instanceof XmlSchemaAttribute) {
+                XmlSchemaAttribute attribute = (XmlSchemaAttribute) schemaAttribute;
+                QName attributeName = attribute.isRef() ? attribute.getRef().getTargetQName() : attribute.getQName();
+                if (attributeName != null) {
+                    type.getChildren().add(newNode(XSDSchemaNode.Kind.ATTRIBUTE, attributeName, null));
+                }
+            } else if (schemaAttribute instanceof XmlSchemaAttributeGroupRef) {
+                XmlSchemaAttributeGroupRef schemaAttributeGroupRef = (XmlSchemaAttributeGroupRef) schemaAttribute;
+                XmlSchemaAttributeGroup schemaAttributeGroup = schemaAttributeGroupRef.getRef() == null ? null : schemaAttributeGroupRef.getRef().getTarget();
+                if (schemaAttributeGroup == null) {
+                    System.out.println("XSDSchemaModel: " + "unresolved attribute group ref: " + schemaAttributeGroupRef.getRef());
+                } else if (visitedGroups.add(schemaAttributeGroup)) {
+                    addAttributes(type, schemaAttributeGroup.getAttributes(), visitedGroups);
+                }
+            }
+        }
+    }
+
+    private XSDSchemaNode buildGroup(XmlSchemaGroupRef schemaGroupRef) {
+        QName groupName = schemaGroupRef.getRefName();
+        XSDSchemaNode group = groupNodes.get(groupName);
+        if (group == null) {
+            group = newNode(XSDSchemaNode.Kind.GROUP, groupName, null);
+            groupNodes.put(groupName, group);
+
+            XmlSchemaGroup schemaGroup = schemaCollection.getGroupByQName(groupName);
+            if (schemaGroup == null) {
+                System.out.println("XSDSchemaModel: " + "unresolved group ref: " + groupName);
+            } else {
+                XSDSchemaNode particleNode = buildParticle(schemaGroup.getParticle());
+                if (particleNode != null) {
+                    group.getChildren().add(particleNode);
+                }
+            }
+        }
+
+        // The group is shared, the occurrence constraints of this reference are kept on a wrapper
+        if (schemaGroupRef.getMinOccurs() != 1 || schemaGroupRef.getMaxOccurs() != 1) {
+            XSDSchemaNode wrapper = newNode(XSDSchemaNode.Kind.SEQUENCE, null, schemaGroupRef);
+            wrapper.getChildren().add(group);
+            return wrapper;
+        }
+        return group;
+    }
+
+    private XSDSchemaNode buildParticle(XmlSchemaObject particle) {
+        if (particle == null) {
+            return null;
+        }
+
+        XSDSchemaNode node = null;
+        if (particle instanceof XmlSchemaElement) {
+            node = buildElement((XmlSchemaElement) particle, (XmlSchemaElement) particle);
+        } else if (particle instanceof XmlSchemaGroupRef) {
+            node = buildGroup((XmlSchemaGroupRef) particle);
+        } else if (particle instanceof XmlSchemaSequence) {
+            node = newNode(XSDSchemaNode.Kind.SEQUENCE, null, (XmlSchemaParticle) particle);
+            for (XmlSchemaSequenceMember member : ((XmlSchemaSequence) particle).getItems()) {
+                addParticle(node, (XmlSchemaObject) member);
+            }
+        } else if (particle instanceof XmlSchemaChoice) {
+            node = newNode(XSDSchemaNode.Kind.CHOICE, null, (XmlSchemaParticle) particle);
+            for (XmlSchemaChoiceMember member : ((XmlSchemaChoice) particle).getItems()) {
+                addParticle(node, (XmlSchemaObject) member);
+            }
+        } else if (particle instanceof XmlSchemaAny) {
+            node = buildWildcard((XmlSchemaAny) particle);
+        } else if (particle instanceof XmlSchemaAll) {
+            node = newNode(XSDSchemaNode.Kind.ALL, null, (XmlSchemaParticle) particle);
+            for (XmlSchemaAllMember member : ((XmlSchemaAll) particle).getItems()) {
+                addParticle(node, (XmlSchemaObject) member);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Builds the node of a wildcard, it keeps the namespace constraint and processContents to match the example elements against.
+     */
+    private XSDSchemaNode buildWildcard(XmlSchemaAny schemaAny) {
+        String targetNamespace = schemaAny.getTargetNamespace() == null ? "" : schemaAny.getTargetNamespace();
+        XSDSchemaNode wildcard = newNode(XSDSchemaNode.Kind.ANY, new QName(targetNamespace, XMLSchemaBitmapBuilder.wildcardSegment), schemaAny);
+        if (schemaAny.getNamespace() != null) {
+            wildcard.setNamespaceConstraint(schemaAny.getNamespace());
+        }
+        if (schemaAny.getProcessContent() != null && schemaAny.getProcessContent() != XmlSchemaContentProcessing.NONE) {
+            wildcard.setProcessContents(schemaAny.getProcessContent().name().toLowerCase());
+        }
+        return wildcard;
+    }
+
+    private void addParticle(XSDSchemaNode parent, XmlSchemaObject particle) {
+        XSDSchemaNode node = buildParticle(particle);
+        if (node != null) {
+            parent.getChildren().add(node);
+        }
+    }
+}
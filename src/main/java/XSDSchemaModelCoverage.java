@@ -0,0 +1,352 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import javax.xml.namespace.QName;
+import org.apache.commons.configuration2.tree.ImmutableNode;
+
+/**
+ * The coverage of an {@link XSDSchemaModel}.
+ * <p>
+ * Since the nodes of the model are shared, coverage is not recorded on nodes but on (context, node) pairs, called instances: an instance is an element node reached via a given parent instance.
+ * Instances are only created for elements that occur in the examples, thus, the memory needed grows with the examples and not with the expanded schema. The flat paths are only produced when
+ * the coverage is written (see {@link #toBitmap(String)}).
+ */
+public final class XSDSchemaModelCoverage {
+
+    // The parent instance of root elements
+    public static final int ROOT = -1;
+
+    // The parent instance of elements below uncovered elements when writing
+    private static final int NONE = Integer.MIN_VALUE;
+
+    // A type may be repeated this many times on a written path, deeper recursions are only written if covered
+    private static final int maxTypeRepetitions = 1;
+
+    private static final String delimiter = "/";
+
+    private final XSDSchemaModel model;
+
+    // (parent instance, node id) -> instance
+    private final Map<Long, Integer> instances = new HashMap<>();
+
+    // instance -> set of covering example files
+    private final List<Set<String>> coverage = new ArrayList<>();
+
+    // instance -> occurrences, null if occurrences are not counted
+    private final XMLSchemaOccurrenceCounter occurrenceCounter;
+
+    public XSDSchemaModelCoverage(XSDSchemaModel model) {
+        this(model, null);
+    }
+
+    /**
+     * @param model the schema model
+     * @param occurrenceCounter the counter for the occurrences per instance or null to record the covering examples only
+     */
+    public XSDSchemaModelCoverage(XSDSchemaModel model, XMLSchemaOccurrenceCounter occurrenceCounter) {
+        this.model = model;
+        this.occurrenceCounter = occurrenceCounter;
+    }
+
+    /**
+     * Returns the instance of the given node in the given context, it is created if it does not exist yet.
+     *
+     * @param parentInstance the instance of the parent element or {@link #ROOT}
+     * @param node the element node
+     * @return the instance
+     */
+    public int getInstance(int parentInstance, XSDSchemaNode node) {
+        Long key = instanceKey(parentInstance, node);
+        Integer instance = instances.get(key);
+        if (instance == null) {
+            instance = coverage.size();
+            instances.put(key, instance);
+            coverage.add(new HashSet<>());
+        }
+        return instance;
+    }
+
+    /**
+     * Walks the given example document along the model and adds the example to the coverage of every instance it contains. Each instance is credited once per document. The walk starts at the
+     * outermost nodes of the document that are root elements of the model. If occurrences are counted, the number of nodes per instance is added to the counter.
+     *
+     * @param canonicalPath the canonical path of the example file
+     * @param rootNode the root node of the example document
+     */
+    public void checkDocument(String canonicalPath, ImmutableNode rootNode) {
+        Map<Integer, Integer> coveredInstances = new HashMap<>();
+        checkRoot(rootNode, Collections.emptyMap(), coveredInstances);
+
+        int fileId = occurrenceCounter == null ? -1 : occurrenceCounter.getFileId(canonicalPath);
+        for (Entry<Integer, Integer> coveredInstance : coveredInstances.entrySet()) {
+            coverage.get(coveredInstance.getKey()).add(canonicalPath);
+            if (occurrenceCounter != null) {
+                occurrenceCounter.add(coveredInstance.getKey(), fileId, coveredInstance.getValue());
+            }
+        }
+        XMLSchemaRunMetrics.distinctPathsMatched.addAndGet(coveredInstances.size());
+    }
+
+    /**
+     * Looks for root elements of the model, if the given node is none (e.g. the analysis is scoped to an element nested in the document) its children are searched.
+     */
+    private void checkRoot(ImmutableNode xmlNode, Map<String, String> parentNamespaces, Map<Integer, Integer> coveredInstances) {
+        XSDSchemaNode rootElement = model.getRootElement(localName(xmlNode));
+        if (rootElement != null) {
+            checkElement(xmlNode, rootElement, getInstance(ROOT, rootElement), parentNamespaces, coveredInstances);
+            return;
+        }
+
+        Map<String, String> namespaces = declareNamespaces(xmlNode, parentNamespaces);
+        for (ImmutableNode childNode : xmlNode.getChildren()) {
+            checkRoot(childNode, namespaces, coveredInstances);
+        }
+    }
+
+    private void checkElement(ImmutableNode xmlNode, XSDSchemaNode element, int instance, Map<String, String> parentNamespaces, Map<Integer, Integer> coveredInstances) {
+        XMLSchemaRunMetrics.nodesScanned.incrementAndGet();
+        coveredInstances.merge(instance, 1, Integer::sum);
+
+        // Attributes are credited like child elements of the instance
+        Map<String, String> namespaces = parentNamespaces;
+        if (!xmlNode.getAttributes().isEmpty()) {
+            namespaces = declareNamespaces(xmlNode, parentNamespaces);
+            Map<String, XSDSchemaNode> attributes = model.getAttributes(element);
+            for (String attributeName : xmlNode.getAttributes().keySet()) {
+                if (XMLSchemaUtils.isNamespaceAttribute(attributeName)) {
+                    continue;
+                }
+                XMLSchemaRunMetrics.nodesScanned.incrementAndGet();
+                XSDSchemaNode attribute = attributes.get(attributeName.substring(attributeName.lastIndexOf(":") + 1));
+                if (attribute != null) {
+                    coveredInstances.merge(getInstance(instance, attribute), 1, Integer::sum);
+                }
+            }
+        }
+
+        Map<String, XSDSchemaNode> childElements = model.getChildElements(element);
+        for (ImmutableNode childNode : xmlNode.getChildren()) {
+            XSDSchemaNode childElement = childElements.get(localName(childNode));
+            if (childElement != null) {
+                // The choice alternatives and optional particles the child lies on are exercised, their instances are credited like elements
+                creditBranches(model.getChildBranches(element, childElement.getName()), instance, coveredInstances);
+                checkElement(childNode, childElement, getInstance(instance, childElement), namespaces, coveredInstances);
+            } else {
+                // Elements unknown to the schema can only be credited to a wildcard, if there is none neither can their children
+                checkWildcard(childNode, element, instance, namespaces, coveredInstances);
+            }
+        }
+    }
+
+    /**
+     * Credits an element not declared by name to the first wildcard of the parent's content accepting its namespace. With processContents skip (or lax, if the element is not declared
+     * globally) the subtree is not matched any further, it is credited to the wildcard as a whole. Otherwise the element is matched against its global declaration, looked up by namespace and
+     * local name among all global elements.
+     */
+    private void checkWildcard(ImmutableNode xmlNode, XSDSchemaNode parentElement, int parentInstance, Map<String, String> namespaces, Map<Integer, Integer> coveredInstances) {
+        String prefix = xmlNode.getNodeName().contains(":") ? xmlNode.getNodeName().substring(0, xmlNode.getNodeName().indexOf(":")) : "";
+        String namespaceUri = declareNamespaces(xmlNode, namespaces).getOrDefault(prefix, "");
+
+        for (Entry<XSDSchemaNode, XSDSchemaNode[]> wildcard : model.getWildcards(parentElement).entrySet()) {
+            if (wildcard.getKey().acceptsNamespace(namespaceUri)) {
+                creditBranches(wildcard.getValue(), parentInstance, coveredInstances);
+                coveredInstances.merge(getInstance(parentInstance, wildcard.getKey()), 1, Integer::sum);
+
+                XSDSchemaNode globalElement = "skip".equals(wildcard.getKey().getProcessContents()) ? null : model.getGlobalElement(new QName(namespaceUri, localName(xmlNode)));
+                if (globalElement != null) {
+                    checkElement(xmlNode, globalElement, getInstance(ROOT, globalElement), namespaces, coveredInstances);
+                } else {
+                    XMLSchemaRunMetrics.nodesScanned.addAndGet(countNodes(xmlNode));
+                }
+                return;
+            }
+        }
+    }
+
+    private void creditBranches(XSDSchemaNode[] branches, int instance, Map<Integer, Integer> coveredInstances) {
+        for (XSDSchemaNode branch : branches) {
+            // Element and wildcard branches are the instances of the element (wildcard) itself, they are credited when matched
+            if (branch.getKind() != XSDSchemaNode.Kind.ELEMENT && branch.getKind() != XSDSchemaNode.Kind.ANY) {
+                coveredInstances.merge(getInstance(instance, branch), 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * @return the namespaces in scope of the given node, i.e., the parent's namespaces and the node's own xmlns declarations (prefix -> uri, the default namespace has the empty prefix)
+     */
+    private static Map<String, String> declareNamespaces(ImmutableNode xmlNode, Map<String, String> parentNamespaces) {
+        Map<String, String> namespaces = parentNamespaces;
+        for (Entry<String, Object> attribute : xmlNode.getAttributes().entrySet()) {
+            if (attribute.getKey().equals("xmlns") || attribute.getKey().startsWith("xmlns:")) {
+                if (namespaces == parentNamespaces) {
+                    namespaces = new HashMap<>(parentNamespaces);
+                }
+                namespaces.put(attribute.getKey().equals("xmlns") ? "" : attribute.getKey().substring("xmlns:".length()), String.valueOf(attribute.getValue()));
+            }
+        }
+        return namespaces;
+    }
+
+    private static long countNodes(ImmutableNode xmlNode) {
+        long nodes = 1;
+        for (String attributeName : xmlNode.getAttributes().keySet()) {
+            if (!XMLSchemaUtils.isNamespaceAttribute(attributeName)) {
+                nodes++;
+            }
+        }
+        for (ImmutableNode childNode : xmlNode.getChildren()) {
+            nodes += countNodes(childNode);
+        }
+        return nodes;
+    }
+
+    /**
+     * Produces the flat paths of the model, starting at its root elements, together with their covering examples. This is the only place where flat paths are materialized.
+     * <p>
+     * Below elements whose type was never expanded (lazy mode) no paths are produced, the uncovered element stands for its whole content.
+     *
+     * @param xsdFilePath the xsd file to list the paths under
+     * @return a bitmap as produced by {@link XMLSchemaBitmapBuilder#loadXsdString(String, String, Map)}, including the coverage
+     */
+    public Map<String, Map<String, Set<String>>> toBitmap(String xsdFilePath) {
+        Map<String, Set<String>> pathToFiles = new HashMap<>();
+        // The same path may be reached via different alternatives, e.g. equally named elements in a choice
+        visitPaths((path, element, instance) -> {
+            Set<String> files = pathToFiles.computeIfAbsent(path, key -> new HashSet<>());
+            if (instance != null) {
+                files.addAll(coverage.get(instance));
+            }
+        });
+
+        Map<String, Map<String, Set<String>>> bitmap = new HashMap<>();
+        bitmap.put(xsdFilePath, pathToFiles);
+        return bitmap;
+    }
+
+    /**
+     * Sums up the occurrences counted per instance to the flat paths produced by {@link #toBitmap(String)}.
+     *
+     * @param pathIndex the index over the bitmap produced by {@link #toBitmap(String)}
+     * @param xsdFilePath the xsd file the paths are listed under
+     * @param topK the number of files with the most occurrences to keep per path
+     * @return the occurrences indexed by the path ids of the given index
+     */
+    public XMLSchemaOccurrenceCounter toPathOccurrences(XMLSchemaPathIndex pathIndex, String xsdFilePath, int topK) {
+        XMLSchemaOccurrenceCounter pathOccurrences = new XMLSchemaOccurrenceCounter(topK);
+        if (occurrenceCounter != null) {
+            visitPaths((path, element, instance) -> {
+                if (instance != null) {
+                    pathOccurrences.addAll(pathIndex.getId(xsdFilePath, path), occurrenceCounter, instance);
+                }
+            });
+        }
+        return pathOccurrences;
+    }
+
+    /**
+     * Produces the branch coverage along the flat paths of {@link #toBitmap(String)}: for every element path the choice alternatives and optional particles of its content together with the
+     * examples that exercised them (at that path). The branches are told apart by their node, the description is only used to list them: if several branches of an element path have the
+     * same description (e.g. two optional particles of element A) they are numbered, e.g. "optional element A (2)".
+     *
+     * @return element path -> (branch description -> set of covering example files)
+     */
+    public Map<String, Map<String, Set<String>>> toBranchCoverage() {
+        Map<String, Map<XSDSchemaNode, Set<String>>> branchFiles = new LinkedHashMap<>();
+        Map<XSDSchemaNode, String> descriptions = new HashMap<>();
+        visitPaths((path, element, instance) -> {
+            // The content of types never expanded (lazy mode) is not listed
+            if (model.getContent(element) == null || !model.isExpanded(model.getContent(element))) {
+                return;
+            }
+            for (Entry<XSDSchemaNode, String> branch : model.getBranches(element).entrySet()) {
+                descriptions.put(branch.getKey(), branch.getValue());
+                Integer branchInstance = instance == null ? null : instances.get(instanceKey(instance, branch.getKey()));
+                Set<String> files = branchFiles.computeIfAbsent(path, key -> new LinkedHashMap<>()).computeIfAbsent(branch.getKey(), key -> new HashSet<>());
+                if (branchInstance != null) {
+                    files.addAll(coverage.get(branchInstance));
+                }
+            }
+        });
+
+        Map<String, Map<String, Set<String>>> branchCoverage = new LinkedHashMap<>();
+        for (Entry<String, Map<XSDSchemaNode, Set<String>>> elementBranches : branchFiles.entrySet()) {
+            Map<String, Set<String>> describedBranches = new LinkedHashMap<>();
+            for (Entry<XSDSchemaNode, Set<String>> branch : elementBranches.getValue().entrySet()) {
+                String description = descriptions.get(branch.getKey());
+                String uniqueDescription = description;
+                for (int number = 2; describedBranches.containsKey(uniqueDescription); number++) {
+                    uniqueDescription = description + " (" + number + ")";
+                }
+                describedBranches.put(uniqueDescription, branch.getValue());
+            }
+            branchCoverage.put(elementBranches.getKey(), describedBranches);
+        }
+        return branchCoverage;
+    }
+
+    private interface PathVisitor {
+        void visit(String path, XSDSchemaNode element, Integer instance);
+    }
+
+    /**
+     * Walks the flat paths of the model, starting at its root elements, and passes each path with its element and instance (null if not covered) to the visitor.
+     */
+    private void visitPaths(PathVisitor visitor) {
+        for (XSDSchemaNode rootElement : model.getRootElements()) {
+            visitPaths("", rootElement, ROOT, new HashMap<>(), visitor);
+        }
+    }
+
+    private void visitPaths(String parentPath, XSDSchemaNode element, int parentInstance, Map<XSDSchemaNode, Integer> typeRepetitions, PathVisitor visitor) {
+        String path = parentPath + delimiter + (element.getKind() == XSDSchemaNode.Kind.ATTRIBUTE ? XMLSchemaBitmapBuilder.attributePrefix : "") + element.getName();
+        Integer instance = parentInstance == NONE ? null : instances.get(instanceKey(parentInstance, element));
+        visitor.visit(path, element, instance);
+
+        // Stop recursive types unless the examples went deeper
+        XSDSchemaNode content = model.getContent(element);
+        if (content == null) {
+            return;
+        }
+
+        // Types never expanded (lazy mode) were not reached by any example, their whole content is uncovered and represented by this element
+        if (!model.isExpanded(content)) {
+            return;
+        }
+        int repetitions = typeRepetitions.getOrDefault(content, 0);
+        if (repetitions > maxTypeRepetitions && instance == null) {
+            return;
+        }
+
+        for (XSDSchemaNode attribute : model.getAttributes(element).values()) {
+            visitPaths(path, attribute, instance == null ? NONE : instance, typeRepetitions, visitor);
+        }
+        for (XSDSchemaNode wildcard : model.getWildcards(element).keySet()) {
+            visitPaths(path, wildcard, instance == null ? NONE : instance, typeRepetitions, visitor);
+        }
+
+        typeRepetitions.put(content, repetitions + 1);
+        for (Entry<String, XSDSchemaNode> childElement : model.getChildElements(element).entrySet()) {
+            visitPaths(path, childElement.getValue(), instance == null ? NONE : instance, typeRepetitions, visitor);
+        }
+        typeRepetitions.put(content, repetitions);
+    }
+
+    public int getInstanceCount() {
+        return coverage.size();
+    }
+
+    private static Long instanceKey(int parentInstance, XSDSchemaNode node) {
+        return ((long) parentInstance << 32) | (node.getId() & 0xFFFFFFFFL);
+    }
+
+    private static String localName(ImmutableNode node) {
+        return node.getNodeName().substring(node.getNodeName().lastIndexOf(":") + 1);
+    }
+}
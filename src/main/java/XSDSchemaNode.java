@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+/**
+ * A node of the {@link XSDSchemaModel}, i.e., an element, an attribute, a wildcard (xs:any), a type, a group or a particle (sequence, choice) of the schema.
+ * <p>
+ * Nodes are shared: the content of a named type or group exists once and all elements using it point to the same node. Thus, the model is a DAG (or a graph with cycles for recursive schemas)
+ * and not a tree of all paths.
+ */
+public class XSDSchemaNode {
+
+    public enum Kind {
+        ELEMENT, ATTRIBUTE, ANY, TYPE, GROUP, SEQUENCE, CHOICE, ALL
+    }
+
+    /**
+     * Unique (within the model) id of the node
+     */
+    private final int id;
+
+    private final Kind kind;
+
+    /**
+     * The qualified name of elements, named types and groups, null otherwise. Wildcards are named * in the target namespace of their schema.
+     */
+    private final QName qName;
+
+    private long minOccurs = 1;
+
+    private long maxOccurs = 1;
+
+    /**
+     * For wildcards the namespace constraint (e.g. ##other or a list of namespaces) and the processContents (skip, lax or strict)
+     */
+    private String namespaceConstraint = "##any";
+
+    private String processContents = "strict";
+
+    /**
+     * For elements the content type (if any), for types and groups their particles (and base type) and attributes, for particles their members
+     */
+    private final List<XSDSchemaNode> children = new ArrayList<>();
+
+    public XSDSchemaNode(int id, Kind kind, QName qName) {
+        this.id = id;
+        this.kind = kind;
+        this.qName = qName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public QName getQName() {
+        return qName;
+    }
+
+    public String getName() {
+        return qName == null ? null : qName.getLocalPart();
+    }
+
+    public long getMinOccurs() {
+        return minOccurs;
+    }
+
+    public void setMinOccurs(long minOccurs) {
+        this.minOccurs = minOccurs;
+    }
+
+    public long getMaxOccurs() {
+        return maxOccurs;
+    }
+
+    public void setMaxOccurs(long maxOccurs) {
+        this.maxOccurs = maxOccurs;
+    }
+
+    public String getNamespaceConstraint() {
+        return namespaceConstraint;
+    }
+
+    public void setNamespaceConstraint(String namespaceConstraint) {
+        this.namespaceConstraint = namespaceConstraint;
+    }
+
+    public String getProcessContents() {
+        return processContents;
+    }
+
+    public void setProcessContents(String processContents) {
+        this.processContents = processContents;
+    }
+
+    /**
+     * Checks the namespace constraint of a wildcard, as defined for the namespace attribute of xs:any.
+     *
+     * @param namespaceUri the namespace of an xml element, empty if it has none
+     * @return true if the wildcard allows elements of the namespace
+     */
+    public boolean acceptsNamespace(String namespaceUri) {
+        String targetNamespace = qName == null ? "" : qName.getNamespaceURI();
+        if (namespaceConstraint == null || namespaceConstraint.trim().isEmpty() || "##any".equals(namespaceConstraint.trim())) {
+            return true;
+        }
+        if ("##other".equals(namespaceConstraint.trim())) {
+            return !namespaceUri.isEmpty() && !namespaceUri.equals(targetNamespace);
+        }
+
+        for (String namespace : Arrays.asList(namespaceConstraint.trim().split("\\s+"))) {
+            if ("##targetNamespace".equals(namespace) ? namespaceUri.equals(targetNamespace) : "##local".equals(namespace) ? namespaceUri.isEmpty() : namespaceUri.equals(namespace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<XSDSchemaNode> getChildren() {
+        return children;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        XSDSchemaNode that = (XSDSchemaNode) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "XSDSchemaNode{" +
+            "id=" + id +
+            ", kind=" + kind +
+            ", qName=" + qName +
+            '}';
+    }
+}
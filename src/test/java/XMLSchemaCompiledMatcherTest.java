@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the compiled matcher gives the same matches as the full match of {@link XMLSchemaPathIndex#match(String)}.
+ */
+class XMLSchemaCompiledMatcherTest {
+
+    private static final String DELIMITER = "/";
+
+    private static final String[] NAMES = {"Root", "A", "B", "C", "Ext", "Foo", "@id"};
+
+    @Test
+    void matchesLikeThePathIndex() {
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(createBitmap(), DELIMITER);
+        XMLSchemaCompiledMatcher compiledMatcher = XMLSchemaCompiledMatcher.compile(pathIndex, DELIMITER);
+
+        for (String nodePath : createNodePaths()) {
+            assertArrayEquals(pathIndex.match(nodePath), compiledMatcher.match(nodePath), nodePath);
+        }
+    }
+
+    @Test
+    void matchesTheFirstOccurrenceOfARepeatedPath() {
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(createBitmap(), DELIMITER);
+        XMLSchemaCompiledMatcher compiledMatcher = XMLSchemaCompiledMatcher.compile(pathIndex, DELIMITER);
+
+        for (String nodePath : Arrays.asList("/Root/A/B/Root/A/B", "/A/B/A/B/C", "/Root/Ext/Foo/Root/Ext/A", "/Root/Ext/A/Root/Ext/Foo", "/B/A/B/A/B/C")) {
+            assertArrayEquals(pathIndex.match(nodePath), compiledMatcher.match(nodePath), nodePath);
+        }
+    }
+
+    @Test
+    void matchesWildcardsWithUndeclaredElementsOnly() {
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(createBitmap(), DELIMITER);
+        XMLSchemaCompiledMatcher compiledMatcher = XMLSchemaCompiledMatcher.compile(pathIndex, DELIMITER);
+        int wildcardId = pathIndex.getId("main.xsd", "element:/Root/Ext/*");
+
+        assertTrue(contains(compiledMatcher.match("/Root/Ext/Foo"), wildcardId));
+        assertTrue(contains(compiledMatcher.match("/Root/Ext/Foo/B"), wildcardId));
+        assertFalse(contains(compiledMatcher.match("/Root/Ext/A"), wildcardId));
+        assertFalse(contains(compiledMatcher.match("/Root/Ext/@id"), wildcardId));
+        assertFalse(contains(compiledMatcher.match("/Root/Ext"), wildcardId));
+        assertTrue(pathIndex.endsWith(wildcardId, "/Root/Ext/Foo"));
+        assertFalse(pathIndex.endsWith(wildcardId, "/Root/Ext/Foo/B"));
+    }
+
+    @Test
+    void compilesThePathsOfFullSegmentsOnly() {
+        XMLSchemaPathIndex pathIndex = XMLSchemaPathIndex.build(createBitmap(), DELIMITER);
+        XMLSchemaCompiledMatcher compiledMatcher = XMLSchemaCompiledMatcher.compile(pathIndex, DELIMITER);
+
+        // The path without a leading delimiter and the one with the namespace prefix cut off within a segment
+        assertEquals(2, compiledMatcher.getUncompiledCount());
+    }
+
+    /**
+     * A bitmap as loaded from an xsd, with attribute and wildcard paths, nested repetitions and paths that cannot be compiled.
+     */
+    private static Map<String, Map<String, Set<String>>> createBitmap() {
+        Map<String, Map<String, Set<String>>> bitmap = new HashMap<>();
+        Map<String, Set<String>> mainPaths = new HashMap<>();
+        for (String path : Arrays.asList("element:/Root", "element:/Root/A", "element:/Root/A/B", "element:/Root/A/@id", "element:/Root/Ext", "element:/Root/Ext/A",
+            "element:/Root/Ext/*", "element:/A/B", "element:/A/B/A", "element:/B/A/B/C", "element:/C", "element:/Foo/*", "element:Root/C", "element:/ns:A/B")) {
+            mainPaths.put(path, new HashSet<>());
+        }
+        bitmap.put("main.xsd", mainPaths);
+
+        Map<String, Set<String>> includedPaths = new HashMap<>();
+        for (String path : Arrays.asList("element:/Ext/Foo", "element:/Ext/*", "element:/Root/A/B")) {
+            includedPaths.put(path, new HashSet<>());
+        }
+        bitmap.put("included.xsd", includedPaths);
+        bitmap.put("empty.xsd", null);
+        return bitmap;
+    }
+
+    /**
+     * All node paths up to three segments and random deeper ones, attributes only as the last segment.
+     */
+    private static List<String> createNodePaths() {
+        List<String> nodePaths = new ArrayList<>();
+        List<String> shorter = Arrays.asList("");
+        for (int depth = 1; depth <= 3; depth++) {
+            List<String> current = new ArrayList<>();
+            for (String prefix : shorter) {
+                for (String name : NAMES) {
+                    current.add(prefix + DELIMITER + name);
+                }
+            }
+            nodePaths.addAll(current);
+            shorter = current;
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder nodePath = new StringBuilder();
+            int depth = 4 + random.nextInt(6);
+            for (int segment = 0; segment < depth; segment++) {
+                nodePath.append(DELIMITER).append(NAMES[random.nextInt(segment == depth - 1 ? NAMES.length : NAMES.length - 1)]);
+            }
+            nodePaths.add(nodePath.toString());
+        }
+        return nodePaths;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        return Arrays.stream(ids).anyMatch(matchedId -> matchedId == id);
+    }
+}
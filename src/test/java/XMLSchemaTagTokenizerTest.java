@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration2.XMLConfiguration;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.configuration2.io.FileHandler;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the tag tokenizer collects the same node paths (and nodes) as {@link XMLSchemaCoverageChecker#checkElement} on the parsed document, and that it hands over the documents it
+ * cannot handle like the parser.
+ */
+class XMLSchemaTagTokenizerTest {
+
+    @Test
+    void collectsAttributesAndNamespacedElementsLikeTheParser() throws ConfigurationException {
+        assertSameNodePaths("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<ojp:Root xmlns:ojp=\"urn:ojp\" xmlns=\"urn:siri\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"urn:ojp ojp.xsd\" version=\"1.0\">\n"
+            + "  <Header lang='de' ojp:ref=\"x\"><Sender>a &amp; b &#x41;</Sender></Header>\n"
+            + "  <ojp:TripResult id=\"1\"><ojp:Trip/></ojp:TripResult>\n"
+            + "  <ojp:TripResult id=\"2\" xmlns:other=\"urn:other\"><other:Leg other:mode=\"rail\"/><ojp:Trip>text</ojp:Trip></ojp:TripResult>\n"
+            + "</ojp:Root>\n");
+    }
+
+    @Test
+    void skipsCommentsProcessingInstructionsAndCdataLikeTheParser() throws ConfigurationException {
+        assertSameNodePaths("\uFEFF<?xml version=\"1.0\"?><!-- a comment --><?pi data?>\n"
+            + "<Root><!-- <NotAnElement/> --><A><![CDATA[<NotAnElement attr=\"1\"/>]]></A><?pi <NotAnElement/>?><B a=\"&lt;&gt;&quot;&apos;\"/></Root>\n<!-- after -->\n");
+    }
+
+    @Test
+    void collectsRepeatedPathsWithinANodePathLikeTheParser() throws ConfigurationException {
+        assertSameNodePaths("<A><B><A><B><A/></B></A></B><B><A><B/></A></B></A>");
+        assertSameNodePaths("<Root/>");
+        assertSameNodePaths("<Gr\u00f6sse H\u00f6he=\"1\"><\u00c4/></Gr\u00f6sse>");
+    }
+
+    @Test
+    void handsOverDoctypes() throws ConfigurationException {
+        // The doctype may declare default attributes the tokenizer would miss
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE Root [<!ATTLIST Root v CDATA \"1\">]><Root/>";
+        assertHandedOver(xml.getBytes(StandardCharsets.UTF_8));
+        assertTrue(parse(xml.getBytes(StandardCharsets.UTF_8)).containsKey("/Root/@v"));
+    }
+
+    @Test
+    void handsOverOtherEncodings() throws ConfigurationException {
+        byte[] xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><Root><Gr\u00f6sse/></Root>".getBytes(StandardCharsets.ISO_8859_1);
+        assertHandedOver(xml);
+        assertTrue(parse(xml).containsKey("/Root/Gr\u00f6sse"));
+
+        assertHandedOver("<Root><A/></Root>".getBytes(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    void handsOverUnknownEntities() {
+        byte[] xml = "<Root><A>&unknown;</A></Root>".getBytes(StandardCharsets.UTF_8);
+        assertHandedOver(xml);
+        assertThrows(ConfigurationException.class, () -> parse(xml));
+
+        assertHandedOver("<Root a=\"&unknown;\"/>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void handsOverUndeclaredPrefixes() {
+        assertHandedOver("<p:Root><A/></p:Root>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("<Root xmlns:p=\"urn:p\"><p:A/><q:B/></Root>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("<Root><A p:attr=\"1\"/></Root>".getBytes(StandardCharsets.UTF_8));
+        // A prefix is only in scope within the element declaring it
+        assertHandedOver("<Root><A xmlns:p=\"urn:p\"/><p:B/></Root>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void handsOverDocumentsThatAreNotWellFormed() {
+        assertHandedOver("<Root><A></Root>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("<Root><A/></Root><Second/>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("<Root a=\"1\" a=\"2\"/>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("<Root><!-- a -- b --></Root>".getBytes(StandardCharsets.UTF_8));
+        assertHandedOver("text<Root/>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertSameNodePaths(String xml) throws ConfigurationException {
+        byte[] document = xml.getBytes(StandardCharsets.UTF_8);
+
+        Map<String, Integer> tokenizedPaths = new HashMap<>();
+        long tokenizedNodes = XMLSchemaTagTokenizer.collectNodePaths(document, document.length, tokenizedPaths);
+
+        long nodesBefore = XMLSchemaRunMetrics.nodesScanned.get();
+        Map<String, Integer> parsedPaths = parse(document);
+        long parsedNodes = XMLSchemaRunMetrics.nodesScanned.get() - nodesBefore;
+
+        assertEquals(parsedPaths, tokenizedPaths, xml);
+        assertEquals(parsedNodes, tokenizedNodes, xml);
+    }
+
+    /**
+     * The tokenizer gives up on the document and leaves the node paths untouched, the document is parsed instead.
+     */
+    private static void assertHandedOver(byte[] document) {
+        Map<String, Integer> nodePaths = new HashMap<>();
+        nodePaths.put("/Previous", 1);
+        assertTrue(XMLSchemaTagTokenizer.collectNodePaths(document, document.length, nodePaths) < 0);
+        assertEquals(Map.of("/Previous", 1), nodePaths);
+    }
+
+    private static Map<String, Integer> parse(byte[] document) throws ConfigurationException {
+        XMLConfiguration config = new XMLConfiguration();
+        new FileHandler(config).load(new ByteArrayInputStream(document));
+        Map<String, Integer> nodePaths = new HashMap<>();
+        XMLSchemaCoverageChecker.checkElement(config.getNodeModel().getRootNode(), "", nodePaths);
+        return nodePaths;
+    }
+}